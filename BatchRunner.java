@@ -0,0 +1,307 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.regex.Pattern;
+
+/**
+ * This class runs a file of commands against a RunStorage without any prompts, so changes can be scripted:
+ * java RunApp --batch commands.txt (or - to read the commands from System.in)
+ * Every line is one command, its words are split on spaces. Blank lines and lines that start with # are skipped.
+ * A run is picked by its date and its index among the runs on that date (0 is the one entered first), or by its id
+ * in place of both, like set-rating #42 7
+ *
+ * add distance time [date]             adds a run, dated today if no date is passed in
+ * delete date [index]                  removes a run
+ * set-title date index text...         the rest of the line is the text, "-" clears it
+ * set-location date index text...
+ * set-description date index text...
+ * set-rating date index rating
+ * set-time date index time
+ * get date|#id                         prints the runs on the date, or the run with the id
+ * range from to                        prints the runs from the first date to the second date (inclusive)
+ * latest n                             prints the latest n runs
+ * fastest, longest                     prints that run
+ * total from to                        prints the distance, time and amount of runs in the range
+ * locations [from to]                  prints the amount of runs, distance and time of every location
+ * search words...                      prints the runs with the words (see RunStorage.search)
+ *
+ * Runs are printed one per line: #id, date, time, distance, pace, title, location, rating separated by tabs. A command
+ * that fails prints an error with its line number and the next command is run
+ */
+public class BatchRunner {
+
+  static final Pattern SPACES = Pattern.compile("\\s+"); // compiled once instead of by every split
+
+  RunStorage runCollection;
+  Writer out; // every result and error is written here, should be buffered
+  List<Run> pendingAdds = new ArrayList<>(); // adds in a row are added together by addAll
+  int lineNumber = 0;
+  int commands = 0;
+  int errors = 0;
+
+  /**
+   * Constructor for a BatchRunner that changes the passed in collection
+   * @param myCollection the runs the commands are run against
+   * @param out where results and errors are written to
+   */
+  BatchRunner(RunStorage myCollection, Writer out) {
+    this.runCollection = myCollection;
+    this.out = out;
+  }
+
+  /**
+   * This method runs every command in the passed in file, or in System.in if the file is "-"
+   * @param fileName the file of commands
+   * @throws IOException if the file could not be read or the results could not be written
+   */
+  public void runFile(String fileName) throws IOException {
+    try (BufferedReader reader = fileName.equals("-")
+        ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+        : Files.newBufferedReader(Path.of(fileName), StandardCharsets.UTF_8)) {
+      this.run(reader);
+    }
+  }
+
+  /**
+   * This method runs every command read from the passed in reader, then prints how many commands ran
+   * @param reader the commands, one per line
+   * @throws IOException if the commands could not be read or the results could not be written
+   */
+  public void run(BufferedReader reader) throws IOException {
+    long start = System.nanoTime();
+    String line;
+    while ((line = reader.readLine()) != null) {
+      ++this.lineNumber;
+      this.runLine(line);
+    }
+    this.flushAdds();
+    long millis = (System.nanoTime() - start) / 1_000_000;
+    this.out.append("Ran ").append(Integer.toString(this.commands)).append(" commands in ")
+        .append(Long.toString(millis)).append(" ms, ").append(Integer.toString(this.errors)).append(" errors\n");
+    this.out.flush();
+  }
+
+  /**
+   * This method runs a single command, printing an error instead of throwing if it fails
+   * @param line the command
+   * @throws IOException if the results could not be written
+   */
+  public void runLine(String line) throws IOException {
+    String trimmed = line.trim();
+    if (trimmed.isEmpty() || trimmed.charAt(0) == '#') {
+      return;
+    }
+    ++this.commands;
+    String[] words = split(trimmed);
+    try {
+      if (words[0].equals("add")) {
+        this.add(words);
+        return;
+      }
+      this.flushAdds(); // the runs added before this command have to be in the collection first
+      switch (words[0]) {
+        case "delete":
+          this.runCollection.removeRun(this.find(words, words.length > 2 ? words[2] : "0"));
+          break;
+        case "set-title":
+          this.runCollection.setTitle(this.find(words, argument(words, 2)), text(words));
+          break;
+        case "set-location":
+          this.runCollection.setLocation(this.find(words, argument(words, 2)), text(words));
+          break;
+        case "set-description":
+          this.runCollection.setDescription(this.find(words, argument(words, 2)), text(words));
+          break;
+        case "set-rating":
+          this.runCollection.setRating(this.find(words, argument(words, 2)), Integer.parseInt(argument(words, 3)));
+          break;
+        case "set-time":
+          this.runCollection.setRunTime(this.find(words, argument(words, 2)), argument(words, 3));
+          break;
+        case "get":
+          if (isId(argument(words, 1))) {
+            this.printRun(this.find(words, "0"));
+          }
+          else {
+            this.printRuns(this.runCollection.getRuns(LocalDate.parse(words[1])));
+          }
+          break;
+        case "range":
+          this.printRuns(this.runCollection.getRuns(LocalDate.parse(argument(words, 1)),
+              LocalDate.parse(argument(words, 2))));
+          break;
+        case "latest":
+          this.printRuns(this.runCollection.getLatest(Integer.parseInt(argument(words, 1))));
+          break;
+        case "fastest":
+          this.printRun(this.runCollection.getFastest());
+          break;
+        case "longest":
+          this.printRun(this.runCollection.getLongest());
+          break;
+        case "search":
+          this.printRuns(this.runCollection.search(trimmed.substring(words[0].length()).trim()));
+          break;
+        case "locations":
+          this.printLocations(words.length > 1 ? LocalDate.parse(words[1]) : LocalDate.MIN,
+              words.length > 1 ? LocalDate.parse(argument(words, 2)) : LocalDate.MAX);
+          break;
+        case "total":
+          this.printTotal(this.runCollection.getTotal(LocalDate.parse(argument(words, 1)),
+              LocalDate.parse(argument(words, 2))));
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown command " + words[0]);
+      }
+    }
+    catch (IllegalArgumentException | DateTimeException | NoSuchElementException e) {
+      // NumberFormatException is an IllegalArgumentException
+      ++this.errors;
+      this.out.append("Error on line ").append(Integer.toString(this.lineNumber)).append(": ")
+          .append(e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage()).append('\n');
+    }
+  }
+
+  /**
+   * This private method makes the run of an add command and holds onto it until a command that is not an add
+   */
+  private void add(String[] words) {
+    Double distance = Double.valueOf(argument(words, 1));
+    String time = argument(words, 2);
+    this.pendingAdds.add(words.length > 3 ? new Run(distance, time, words[3]) : new Run(distance, time));
+  }
+
+  /**
+   * This private method adds the runs of the last adds in a row all at once
+   */
+  private void flushAdds() {
+    if (!this.pendingAdds.isEmpty()) {
+      this.runCollection.addAll(this.pendingAdds);
+      this.pendingAdds.clear();
+    }
+  }
+
+  /**
+   * This private method splits a command into its words. The text of a set command is its fourth word, so a
+   * command that picks its run by id gets a placeholder index to keep the text in the same spot
+   */
+  private static String[] split(String command) {
+    String[] words = SPACES.split(command, 3);
+    if (words.length < 2 || !isId(words[1])) {
+      return SPACES.split(command, 4);
+    }
+    return words.length == 2 ? new String[] {words[0], words[1]} : new String[] {words[0], words[1], "0", words[2]};
+  }
+
+  /**
+   * This private method tells if the passed in word is a run id, like #42
+   */
+  private static boolean isId(String word) {
+    return word.length() > 1 && word.charAt(0) == '#';
+  }
+
+  /**
+   * This private method finds the run of a command by the date after the command and the passed in index, or by
+   * the id after the command
+   */
+  private Run find(String[] words, String index) {
+    if (isId(argument(words, 1))) {
+      return this.runCollection.getRunById(Long.parseLong(words[1].substring(1)));
+    }
+    List<Run> onDate = this.runCollection.getRuns(LocalDate.parse(argument(words, 1)));
+    int position = Integer.parseInt(index);
+    if (position < 0 || position >= onDate.size()) {
+      throw new NoSuchElementException("No run " + position + " on " + words[1]);
+    }
+    return onDate.get(position);
+  }
+
+  /**
+   * This private method gets the word at the passed in position of a command
+   */
+  private static String argument(String[] words, int position) {
+    if (position >= words.length) {
+      throw new IllegalArgumentException(words[0] + " is missing arguments");
+    }
+    return words[position];
+  }
+
+  /**
+   * This private method gets the text at the end of a set command, null if it is "-"
+   */
+  private static String text(String[] words) {
+    String text = argument(words, 3);
+    return text.equals("-") ? null : text;
+  }
+
+  /**
+   * This private method prints every run in the passed in list, one per line
+   */
+  private void printRuns(List<Run> runs) throws IOException {
+    for (int i = 0; i < runs.size(); ++i) {
+      this.printRun(runs.get(i));
+    }
+  }
+
+  /**
+   * This private method prints a run on one line, its fields separated by tabs
+   */
+  private void printRun(Run run) throws IOException {
+    if (run == null) {
+      this.out.append("No runs\n");
+      return;
+    }
+    this.out.append('#').append(Long.toString(run.id)).append('\t').append(run.runDate.toString()).append('\t');
+    int seconds = run.timeRan.toSecondOfDay();
+    appendTwoDigits(seconds / 3600);
+    this.out.append(':');
+    appendTwoDigits(seconds / 60 % 60);
+    this.out.append(':');
+    appendTwoDigits(seconds % 60);
+    this.out.append('\t').append(Double.toString(run.distance)).append('\t')
+        .append(Integer.toString(run.paceOfRun / 60)).append(':');
+    appendTwoDigits(run.paceOfRun % 60);
+    this.out.append('\t').append(run.getTitle() == null ? "" : run.getTitle())
+        .append('\t').append(run.getLocation() == null ? "" : run.getLocation())
+        .append('\t').append(Integer.toString(run.getRating())).append('\n');
+  }
+
+  /**
+   * This private method prints the totals of a range on one line
+   */
+  private void printTotal(RunTotals.Total total) throws IOException {
+    this.out.append("runs: ").append(Integer.toString(total.getCount()))
+        .append(", distance: ").append(Double.toString(total.getDistance()))
+        .append(", seconds: ").append(Long.toString(total.getSeconds())).append('\n');
+  }
+
+  /**
+   * This private method prints the totals of every location in a range, one location per line
+   */
+  private void printLocations(LocalDate from, LocalDate to) throws IOException {
+    Map<String, RunTotals.Total> totals = this.runCollection.getLocationTotals(from, to);
+    for (Map.Entry<String, RunTotals.Total> entry : totals.entrySet()) {
+      RunTotals.Total total = entry.getValue();
+      this.out.append(entry.getKey()).append("\truns: ").append(Integer.toString(total.getCount()))
+          .append(", distance: ").append(Double.toString(total.getDistance()))
+          .append(", seconds: ").append(Long.toString(total.getSeconds())).append('\n');
+    }
+  }
+
+  /**
+   * This private method writes a number that is less than 100 with a 0 in front of it if it only has one digit
+   */
+  private void appendTwoDigits(int value) throws IOException {
+    this.out.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+  }
+}
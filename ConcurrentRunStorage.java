@@ -0,0 +1,395 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+/**
+ * This class defines a RunStorage that can be used by many threads at once. Every change takes a write lock, and
+ * every read first runs without any lock (an optimistic read) and is only run again under a read lock if a
+ * change happened while it was running. Readers never block each other, and only wait for a writer if they
+ * overlap with one. Lists of runs are returned as copies, since a view of the storage could change under the
+ * reader, and a run is never edited in place, an edit swaps in an edited copy, so a reader can use a run it got
+ * without holding any lock
+ */
+public class ConcurrentRunStorage {
+
+  RunStorage storage; // every run, only changed while holding the write lock
+  StampedLock lock = new StampedLock();
+
+  /**
+   * Constructor for an empty concurrent collection of runs
+   */
+  ConcurrentRunStorage() {
+    this(new RunStorage());
+  }
+
+  /**
+   * Constructor for a concurrent collection of the runs in the passed in storage. The storage should not be used
+   * directly anymore after this
+   * @param storage the runs to share between threads
+   */
+  ConcurrentRunStorage(RunStorage storage) {
+    this.storage = storage;
+    this.storage.copyOnWrite = true;
+  }
+
+  /**
+   * This method reads in a CSV file of Run and adds each Run to the collection the same way as
+   * RunStorage.readFile. The file is parsed before the write lock is taken, so readers are only blocked while
+   * the parsed runs are added
+   * @param fileName
+   * @throws IOException if the file does not exist or could not be read
+   */
+  public void readFile(String fileName) throws IOException {
+    Path file = Path.of(fileName);
+    if (Files.size(file) >= RunStorage.PARALLEL_READ_SIZE) {
+      List<Run> sorted = RunFileReader.readRunsParallel(file, ForkJoinPool.commonPool()).runs;
+      this.write(() -> {
+        this.storage.addSorted(sorted);
+        return null;
+      });
+      return;
+    }
+    this.addAll(RunFileReader.readRuns(file));
+  }
+
+  /**
+   * adds the passed in run to the collection
+   * @param toAdd the run to add
+   */
+  public void addRun(Run toAdd) {
+    this.write(() -> {
+      this.storage.addRun(toAdd);
+      return null;
+    });
+  }
+
+  /**
+   * adds all the passed in runs to the collection at once
+   * @param toAdd the runs to add
+   */
+  public void addAll(Collection<Run> toAdd) {
+    this.write(() -> {
+      this.storage.addAll(toAdd);
+      return null;
+    });
+  }
+
+  /**
+   * Removes the passed in run from the collection, or the edited copy of it that is in the collection now
+   * @param toRemove the run to remove
+   * @return the removed run, or null if it was not found
+   */
+  public Run removeRun(Run toRemove) {
+    return this.write(() -> this.storage.removeRun(this.current(toRemove)));
+  }
+
+  /**
+   * Removes the run with the passed in id from the collection
+   * @param id the id of the run
+   * @return the removed run, or null if no run has that id
+   */
+  public Run removeRunById(long id) {
+    return this.write(() -> this.storage.removeRunById(id));
+  }
+
+  /**
+   * Resets the total time of the passed in run
+   * @param toEdit a run in this collection, or an older copy of it
+   * @param time the new time for the run
+   * @return the edited copy of the passed in run
+   */
+  public Run setRunTime(Run toEdit, String time) {
+    return this.write(() -> this.storage.setRunTime(this.current(toEdit), time));
+  }
+
+  /**
+   * Sets the title of the passed in run
+   * @param toEdit a run in this collection, or an older copy of it
+   * @param title the title of run
+   * @return the edited copy of the passed in run
+   */
+  public Run setTitle(Run toEdit, String title) {
+    return this.write(() -> this.storage.setTitle(this.current(toEdit), title));
+  }
+
+  /**
+   * Sets the location of the passed in run
+   * @param toEdit a run in this collection, or an older copy of it
+   * @param location the location of the run
+   * @return the edited copy of the passed in run
+   */
+  public Run setLocation(Run toEdit, String location) {
+    return this.write(() -> this.storage.setLocation(this.current(toEdit), location));
+  }
+
+  /**
+   * Sets the description of the passed in run
+   * @param toEdit a run in this collection, or an older copy of it
+   * @param description the description of the run
+   * @return the edited copy of the passed in run
+   */
+  public Run setDescription(Run toEdit, String description) {
+    return this.write(() -> this.storage.setDescription(this.current(toEdit), description));
+  }
+
+  /**
+   * Sets the rating of the passed in run
+   * @param toEdit a run in this collection, or an older copy of it
+   * @param rating the rating of the run
+   * @return the edited copy of the passed in run
+   */
+  public Run setRating(Run toEdit, int rating) {
+    return this.write(() -> this.storage.setRating(this.current(toEdit), rating));
+  }
+
+  /**
+   * This method takes a snapshot of every run in this collection as it is right now, see RunStorage.snapshot. The
+   * snapshot is read without any lock, so long reads of it never hold up writers
+   * @return a read only snapshot of the runs, sorted by date
+   */
+  public RunStorageSnapshot snapshot() {
+    return this.write(() -> this.storage.snapshot());
+  }
+
+  /**
+   * This method finds the first run entered on the passed in date
+   * @param date the date matching the target run
+   * @return the run that matches the specified date
+   */
+  public Run getRun(String date) {
+    return this.read(() -> this.storage.getRun(date));
+  }
+
+  /**
+   * This method finds the run with the passed in id
+   * @param id the id of the run
+   * @return the run with that id
+   * @throws NoSuchElementException if no run in this collection has that id
+   */
+  public Run getRunById(long id) {
+    return this.read(() -> this.storage.getRunById(id));
+  }
+
+  /**
+   * This method gets all the runs on the passed in date, in the order they were entered
+   * @param date the date of the runs
+   * @return a copy of the runs on that date, empty if there are none
+   */
+  public List<Run> getRuns(LocalDate date) {
+    return this.getRuns(date, date);
+  }
+
+  /**
+   * This method gets all the runs from the first date to the second date (inclusive) sorted by date
+   * @param from the first date of the range
+   * @param to the last date of the range
+   * @return a copy of the runs in the range, empty if there are none
+   */
+  public List<Run> getRuns(LocalDate from, LocalDate to) {
+    return this.read(() -> new ArrayList<>(this.storage.getRuns(from, to)));
+  }
+
+  /**
+   * This method gets one page of the runs from the first date to the second date (inclusive) sorted by date. Only
+   * the runs of the page are copied, so a large range costs no more than a small one
+   * @param from the first date of the range
+   * @param to the last date of the range
+   * @param offset the amount of runs in the range to skip
+   * @param limit the most runs to get
+   * @return a copy of the runs of the page, empty if there are none
+   */
+  public List<Run> getRuns(LocalDate from, LocalDate to, int offset, int limit) {
+    if (offset < 0 || limit < 0) {
+      throw new IllegalArgumentException("Offset and limit can not be negative");
+    }
+    return this.read(() -> {
+      List<Run> range = this.storage.getRuns(from, to);
+      int start = Math.min(offset, range.size());
+      return new ArrayList<>(range.subList(start, start + Math.min(limit, range.size() - start)));
+    });
+  }
+
+  /**
+   * This method finds the runs with the words of the passed in query in their title, location or description,
+   * see RunStorage.search. The index is a tree map, which is not safe to read while it is being changed, so the
+   * search always holds the read lock
+   * @param query the words to look for
+   * @return the matching runs sorted by date, empty if there are none
+   */
+  public List<Run> search(String query) {
+    long stamp = this.lock.readLock();
+    try {
+      return this.storage.search(query);
+    }
+    finally {
+      this.lock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * This method gets the latest runs in this collection from (Latest --> Earliest)
+   * @param n the amount of runs to get
+   * @return a copy of the latest n runs, or of all the runs if there are less than n runs
+   */
+  public List<Run> getLatest(int n) {
+    return this.read(() -> new ArrayList<>(this.storage.getLatest(n)));
+  }
+
+  /**
+   * This method gets the total distance, time and amount of runs from the first date to the second date
+   * (inclusive)
+   * @param from the first date of the range
+   * @param to the last date of the range
+   * @return the totals of the runs in the range
+   */
+  public RunTotals.Total getTotal(LocalDate from, LocalDate to) {
+    return this.read(() -> this.storage.getTotal(from, to));
+  }
+
+  /**
+   * This method gets the amount of runs at the passed in location
+   * @param location the location of the runs
+   * @return the amount of runs at that location, 0 if there are none
+   */
+  public int getLocationCount(String location) {
+    return this.read(() -> this.storage.getLocationCount(location));
+  }
+
+  /**
+   * This method gets the amount of runs at every location
+   * @return the amount of runs of every location with at least one run, sorted by location
+   */
+  public Map<String, Integer> getLocationCounts() {
+    return this.read(() -> this.storage.getLocationCounts());
+  }
+
+  /**
+   * This method gets the total distance, time and amount of runs at every location from the first date to the
+   * second date (inclusive)
+   * @param from the first date of the range
+   * @param to the last date of the range
+   * @return the totals of every location with a run in the range, sorted by location
+   */
+  public Map<String, RunTotals.Total> getLocationTotals(LocalDate from, LocalDate to) {
+    return this.read(() -> this.storage.getLocationTotals(from, to));
+  }
+
+  /**
+   * This method gets the personal record (fastest run) of the passed in distance
+   * @param name the name of the distance
+   * @return the fastest run of that distance, or null if there is none
+   */
+  public Run getRecord(String name) {
+    return this.read(() -> this.storage.getRecord(name));
+  }
+
+  /**
+   * This method gets the amount of runs in this collection
+   * @return the amount of runs
+   */
+  public int getSize() {
+    return this.read(() -> this.storage.getSize());
+  }
+
+  /**
+   * This method estimates the memory the collection takes up, see RunStorage.getMemoryBytes
+   * @return the estimated size in bytes
+   */
+  long getMemoryBytes() {
+    return this.read(() -> this.storage.getMemoryBytes());
+  }
+
+  /**
+   * This method closes the journal of the collection, which writes every run to its snapshot. Closing detaches the
+   * journal from the storage, so it is done under the write lock, which also keeps writers out while the runs are
+   * saved
+   * @throws IOException if the snapshot or the log could not be written
+   */
+  void closeJournal() throws IOException {
+    long stamp = this.lock.writeLock();
+    try {
+      if (this.storage.journal != null) {
+        this.storage.journal.close();
+      }
+    }
+    finally {
+      this.lock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * this method gets the longest run stored in this collection
+   * @return The longest run, or null if there are no runs
+   */
+  public Run getLongest() {
+    return this.read(() -> this.storage.getLongest());
+  }
+
+  /**
+   * This method gets the Fastest run stored in this collection
+   * @return The fastest run, or null if there are no runs
+   */
+  public Run getFastest() {
+    return this.read(() -> this.storage.getFastest());
+  }
+
+  /**
+   * This private method runs the passed in read without a lock first, and again under the read lock if a writer
+   * changed the storage while it was running. A read that overlapped with a writer can fail in any way (like an
+   * index that is out of bounds), so its result or exception is only used if no writer got in
+   */
+  private <T> T read(Supplier<T> reader) {
+    long stamp = this.lock.tryOptimisticRead();
+    if (stamp != 0) {
+      try {
+        T result = reader.get();
+        if (this.lock.validate(stamp)) {
+          return result;
+        }
+      }
+      catch (RuntimeException e) {
+        if (this.lock.validate(stamp)) {
+          throw e; // nothing changed, so the exception is real
+        }
+      }
+    }
+    stamp = this.lock.readLock();
+    try {
+      return reader.get();
+    }
+    finally {
+      this.lock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * This private method runs the passed in change under the write lock
+   */
+  private <T> T write(Supplier<T> writer) {
+    long stamp = this.lock.writeLock();
+    try {
+      return writer.get();
+    }
+    finally {
+      this.lock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * This private method gets the run with the id of the passed in run that is in the storage right now. Every edit
+   * swaps in a copy of the run, so a caller may still hold a copy from before the last edit. Must be called while
+   * holding the write lock
+   */
+  private Run current(Run toFind) {
+    Run current = this.storage.getRunById(toFind.id);
+    return current == null ? toFind : current;
+  }
+}
@@ -1,5 +1,11 @@
-import java.io.FileNotFoundException;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.time.DateTimeException;
 import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
 
@@ -7,6 +13,8 @@ import java.util.Scanner;
  * This class acts as an interactive interface so a user can start their Running Log
  */
 public class FrontendRun {
+  static final int PAGE_SIZE = 10; // the amount of runs displayAll prints at once
+
   Scanner input; 
   RunStorage runCollection;
 
@@ -41,12 +49,14 @@ public class FrontendRun {
     System.out.println("Enter any of the following commands to display key information");
     System.out.println("[Fast]: Get Your Fastest Run");
     System.out.println("[Long]: Get Your Longest Run");
+    System.out.println("[Records]: Get Your Fastest Run at every Distance");
     System.out.println("[Recent]: Display your 7 most recent Runs");
     System.out.println("[Title]: Display title of a Run");
     System.out.println("[Location]: Display location of a Run");
     System.out.println("[Description]: Display description of a Run");
     System.out.println("[Rating]: Display rating of a Run");
     System.out.println("[Run]: Display all data of a Run");
+    System.out.println("[Search]: Find Runs by words in their title, location or description");
     System.out.println("[All]: Display all the Runs in this log");
     System.out.println("[Quit]: Go back to main menu");
     System.out.println();
@@ -126,6 +136,10 @@ public class FrontendRun {
           this.longestRun();
           break;
 
+        case "RECORDS":
+          this.displayRecords();
+          break;
+
         case "RECENT": 
           this.displayTop7();
           break;
@@ -150,6 +164,10 @@ public class FrontendRun {
           this.displayRun();
           break;
 
+        case "SEARCH":
+          this.searchRuns();
+          break;
+
         case "ALL":
           this.displayAll();
           break;
@@ -234,9 +252,14 @@ public class FrontendRun {
         continue;
       }
       // will re-prompt to put in file again or quit
-      catch(FileNotFoundException e) {
+      catch(IOException e) {
         System.out.println("Invalid file path. Please re-enter another file name or \"Quit\" to exit to main menu");
       }
+      // the file was found but a run in it was not formatted correctly
+      catch(IllegalArgumentException | DateTimeException e) {
+        System.out.println(e.getMessage());
+        System.out.println("File was not loaded. Please fix the file and re-enter the file name or \"Quit\"");
+      }
     }
   }
 
@@ -260,6 +283,52 @@ public class FrontendRun {
     }
   }
 
+  /**
+   * (1A)
+   * This method displays the users fastest run at every distance
+   */
+  public void displayRecords() {
+    if (this.logIsEmpty()) {
+      System.out.println("You have no runs stored in this log. " + 
+      "Please store runs before accessing information from your running log");
+      return;
+    }
+    Map<String, Run> records = this.runCollection.getRecords();
+    for (Map.Entry<String, Run> record : records.entrySet()) {
+      System.out.println(record.getKey() + ":");
+      if (record.getValue() == null) {
+        System.out.println("No runs at this distance yet\n");
+      }
+      else {
+        System.out.println(record.getValue() + "\n");
+      }
+    }
+  }
+
+  /**
+   * (1A)
+   * This method displays every run with the words the user enters in its title, location or description
+   */
+  public void searchRuns() {
+    if (this.logIsEmpty()) {
+      System.out.println("You have no runs stored in this log. " + 
+      "Please store runs before accessing information from your running log");
+      return;
+    }
+    System.out.println("Enter the words to search for (OR between words matches either one, lake* matches every " +
+        "word that starts with lake, title:tempo only looks at titles)");
+    try {
+      List<Run> found = this.runCollection.search(input.nextLine());
+      for (Run run : found) {
+        System.out.println(run + "\nTitle: " + run.getTitle() + "\nLocation: " + run.getLocation() + "\n");
+      }
+      System.out.println(found.size() + " runs found");
+    }
+    catch (IllegalArgumentException e) {
+      System.out.println("Invalid search: " + e.getMessage());
+    }
+  }
+
   /**
    * (1A)
    * This method displays the users longest run
@@ -290,10 +359,11 @@ public class FrontendRun {
       "Please store runs before accessing information from your running log");
       return;
     }
-    RunStorage display = new RunStorage();
-    // save top 7 songs into variable and print them
-    display = this.runCollection.getLatest7();
-    System.out.println(display);
+    // prints the 7 most recent runs from (Latest --> Earliest) straight from the log
+    List<Run> display = this.runCollection.getLatest(7);
+    for (int i = 0; i < display.size(); ++i) {
+      System.out.println(display.get(i) + "\n" + "-----------------------------");
+    }
     System.out.println("\n");
 
   }
@@ -388,19 +458,57 @@ public class FrontendRun {
   }
 
   /**
-   * This method prints out all the runs in the current log
+   * This method prints out all the runs in the current log, one page at a time from the earliest run. The user
+   * moves between pages, and only the runs on the current page are formatted
    */
   public void displayAll() {
     if (this.logIsEmpty()) {
       System.out.println("This Log has no Runs");
       return;
     }
-    System.out.println(this.runCollection);
+    // not closed, closing it would close System.out
+    Writer out = new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+    int cursor = 0; // index of the first run on the current page
+    while (true) {
+      int size = this.runCollection.getSize();
+      cursor = Math.min(cursor, Math.max(0, size - 1) / PAGE_SIZE * PAGE_SIZE);
+      try {
+        int next = this.runCollection.render(out, cursor, PAGE_SIZE);
+        out.write("Runs " + (cursor + 1) + "-" + next + " of " + size + "\n");
+        out.flush();
+      }
+      catch (IOException e) {
+        System.out.println("Runs could not be displayed: " + e.getMessage());
+        return;
+      }
+      boolean hasNext = cursor + PAGE_SIZE < size;
+      boolean hasPrevious = cursor > 0;
+      if (!hasNext && !hasPrevious) {
+        return;
+      }
+      System.out.println((hasNext ? "[Next] " : "") + (hasPrevious ? "[Prev] " : "") + "[Quit]");
+      if (!input.hasNextLine()) {
+        return;
+      }
+      String command = input.nextLine().trim().toUpperCase();
+      if (command.equals("NEXT") && hasNext) {
+        cursor += PAGE_SIZE;
+      }
+      else if (command.equals("PREV") && hasPrevious) {
+        cursor -= PAGE_SIZE;
+      }
+      else if (command.equals("QUIT")) {
+        return;
+      }
+      else {
+        System.out.println("Invalid command. Please try again.");
+      }
+    }
   }
 
   /**
    * This private method helps all the 1B pages by finding the run based on the passed in date and returns the matching run 
-   * so it can be altered
+   * so it can be altered. A run can also be found by its id, like #42
    * @return the desired run or null is no run was found
    */
   private Run findRun() {
@@ -409,19 +517,60 @@ public class FrontendRun {
       "Please store runs before accessing information from your running log");
       return null;
     }
-    System.out.println("provide the date of the your desired run");
+    System.out.println("provide the date of the your desired run, or its id Ex. #42");
     String date = "";
     if (input.hasNextLine()) {
       date = input.nextLine().trim();
       try {
+        if (date.startsWith("#")) {
+          return runCollection.getRunById(Long.parseLong(date.substring(1).trim()));
+        }
         Run toReturn = runCollection.getRun(date);
+        // if there is more than one run on that day, the user picks which one
+        List<Run> runsOnDate = runCollection.getRuns(toReturn.runDate);
+        if (runsOnDate.size() > 1) {
+          toReturn = this.pickRun(runsOnDate);
+        }
         return toReturn;
       }
       catch(NoSuchElementException e)  {
         System.out.println("Run was not found, Please try again.");
         return null;
       }
+      catch(NumberFormatException e) {
+        System.out.println("Invalid id. Ex. #42");
+        return null;
+      }
+      catch(DateTimeException e) {
+        System.out.println("Invalid date. Ex. 2024-11-26");
+        return null;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * This private method lists the passed in runs that are all on the same day and lets the user pick one of them
+   * @param runsOnDate the runs to pick from
+   * @return the picked run or null if the user did not pick a valid run
+   */
+  private Run pickRun(List<Run> runsOnDate) {
+    System.out.println("There are " + runsOnDate.size() + " runs on that date, enter the number of your desired run");
+    for (int i = 0; i < runsOnDate.size(); ++i) {
+      System.out.println("[" + (i + 1) + "] #" + runsOnDate.get(i).getId() + ":\n" + runsOnDate.get(i));
+    }
+    if (input.hasNextLine()) {
+      try {
+        int choice = Integer.parseInt(input.nextLine().trim());
+        if (choice >= 1 && choice <= runsOnDate.size()) {
+          return runsOnDate.get(choice - 1);
+        }
+      }
+      catch(NumberFormatException e) {
+        // falls through to the message below
+      }
     }
+    System.out.println("Not a valid run number");
     return null;
   }
 
@@ -482,7 +631,7 @@ public class FrontendRun {
           return;
         }
         this.runCollection.addRun(toAdd);
-        System.out.println("Run has been added to your log!");
+        System.out.println("Run #" + toAdd.getId() + " has been added to your log!");
         return; // run added, now return to menu
       }
 
@@ -503,7 +652,7 @@ public class FrontendRun {
           return;
         }
         this.runCollection.addRun(toAdd);
-        System.out.println("Run has been added to your log!");
+        System.out.println("Run #" + toAdd.getId() + " has been added to your log!");
         return; // run added, now return to menu
       }
     }
@@ -537,7 +686,7 @@ public class FrontendRun {
     System.out.println("Enter the updated title of the run:");
     if (input.hasNextLine()) {
       String title = input.nextLine();
-      toEdit.setTitle(title);
+      toEdit = this.runCollection.setTitle(toEdit, title); // may be an edited copy
       System.out.println("The following Run has been edited" + "\n" + toEdit);
       }
     }
@@ -556,7 +705,7 @@ public class FrontendRun {
       System.out.println("Enter the updated location of the run:");
       if (input.hasNextLine()) {
         String location = input.nextLine();
-        toEdit.setLocation(location);
+        toEdit = this.runCollection.setLocation(toEdit, location);
         System.out.println("The following Run has been edited" + "\n" + toEdit);
       }
     }
@@ -575,7 +724,7 @@ public class FrontendRun {
       System.out.println("Enter the updated description of the run:");
       if (input.hasNextLine()) {
         String description = input.nextLine();
-        toEdit.setDescription(description);
+        toEdit = this.runCollection.setDescription(toEdit, description);
         System.out.println("The following Run has been edited" + "\n" + toEdit);
       }
     }
@@ -597,7 +746,7 @@ public class FrontendRun {
         try {
           String potentialRating = input.nextLine();
           int rating = Integer.parseInt(potentialRating);
-          toEdit.setRating(rating);
+          toEdit = this.runCollection.setRating(toEdit, rating);
           System.out.println("The following Run has been edited" + "\n" + toEdit);
         }
         catch(IllegalArgumentException e) {
@@ -0,0 +1,211 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * This class keeps the personal record (the fastest time) of every distance bucket. A bucket holds every run whose
+ * distance is in its range, ordered by time in a RunRecordHeap, so adding, editing or removing a run costs
+ * O(log n) per bucket it is in and removing a record moves the next best run in that bucket to the top
+ */
+public class PersonalRecords {
+
+  // standard race distances in miles
+  static final double MILE = 1.0;
+  static final double FIVE_K = 3.10686;
+  static final double TEN_K = 6.21371;
+  static final double HALF_MARATHON = 13.1094;
+  static final double MARATHON = 26.2188;
+  // a run counts for a standard distance if it is at least that far and at most this much further
+  static final double TOLERANCE = 0.03;
+
+  ArrayList<Bucket> buckets = new ArrayList<>(); // in the order they were added
+
+  /**
+   * Constructor for the records of the standard distances: mile, 5K, 10K, half marathon and marathon
+   */
+  PersonalRecords() {
+    this.addStandardBucket("Mile", MILE);
+    this.addStandardBucket("5K", FIVE_K);
+    this.addStandardBucket("10K", TEN_K);
+    this.addStandardBucket("Half Marathon", HALF_MARATHON);
+    this.addStandardBucket("Marathon", MARATHON);
+  }
+
+  /**
+   * adds a bucket for every run from the minimum distance up to the maximum distance (both inclusive), and adds
+   * every passed in run in that range to it
+   * @param name the name of the bucket
+   * @param minDistance the shortest distance of a run in the bucket
+   * @param maxDistance the longest distance of a run in the bucket
+   * @param runs the runs that are already stored, equally fast runs earlier in the list win ties
+   */
+  void addBucket(String name, double minDistance, double maxDistance, List<Run> runs) {
+    if (name == null || this.getBucket(name) != null) {
+      throw new IllegalArgumentException("There is already a record named " + name);
+    }
+    if (!(minDistance > 0) || !(maxDistance >= minDistance)) {
+      throw new IllegalArgumentException("Invalid distance range: " + minDistance + " - " + maxDistance);
+    }
+    Bucket bucket = new Bucket(name, minDistance, maxDistance);
+    ArrayList<Run> inRange = new ArrayList<>();
+    for (int i = 0; i < runs.size(); ++i) {
+      if (bucket.contains(runs.get(i))) {
+        inRange.add(runs.get(i));
+      }
+    }
+    bucket.runs.addAll(inRange);
+    this.buckets.add(bucket);
+  }
+
+  /**
+   * adds the passed in run to every bucket its distance is in
+   * @param toAdd the run to add
+   */
+  void add(Run toAdd) {
+    for (int i = 0; i < this.buckets.size(); ++i) {
+      Bucket bucket = this.buckets.get(i);
+      if (bucket.contains(toAdd)) {
+        bucket.runs.add(toAdd);
+      }
+    }
+  }
+
+  /**
+   * adds all the passed in runs to every bucket their distance is in
+   * @param toAdd the runs to add, equally fast runs earlier in the list win ties
+   */
+  void addAll(List<Run> toAdd) {
+    for (int i = 0; i < this.buckets.size(); ++i) {
+      Bucket bucket = this.buckets.get(i);
+      ArrayList<Run> inRange = new ArrayList<>();
+      for (int j = 0; j < toAdd.size(); ++j) {
+        if (bucket.contains(toAdd.get(j))) {
+          inRange.add(toAdd.get(j));
+        }
+      }
+      bucket.runs.addAll(inRange);
+    }
+  }
+
+  /**
+   * removes the passed in run from every bucket its distance is in
+   * @param toRemove the run to remove
+   */
+  void remove(Run toRemove) {
+    for (int i = 0; i < this.buckets.size(); ++i) {
+      Bucket bucket = this.buckets.get(i);
+      if (bucket.contains(toRemove)) {
+        bucket.runs.remove(toRemove);
+      }
+    }
+  }
+
+  /**
+   * moves the passed in run to its new spot in every bucket its distance is in after its time was changed
+   * @param toUpdate the run that was edited
+   */
+  void timeChanged(Run toUpdate) {
+    for (int i = 0; i < this.buckets.size(); ++i) {
+      Bucket bucket = this.buckets.get(i);
+      if (bucket.contains(toUpdate)) {
+        bucket.runs.update(toUpdate);
+      }
+    }
+  }
+
+  /**
+   * puts the passed in replacement in the place of a run in every bucket, used when a run is replaced by a copy
+   * @param toReplace the run in the buckets
+   * @param replacement the copy that takes its place
+   */
+  void replace(Run toReplace, Run replacement) {
+    for (int i = 0; i < this.buckets.size(); ++i) {
+      Bucket bucket = this.buckets.get(i);
+      if (bucket.contains(toReplace)) {
+        bucket.runs.replace(toReplace, replacement);
+      }
+    }
+  }
+
+  /**
+   * This method gets the fastest run of the bucket with the passed in name
+   * @param name the name of the bucket
+   * @return the fastest run of the bucket, or null if it has no runs
+   * @throws IllegalArgumentException if there is no bucket with that name
+   */
+  public Run getRecord(String name) {
+    Bucket bucket = this.getBucket(name);
+    if (bucket == null) {
+      throw new IllegalArgumentException("There is no record named " + name);
+    }
+    return bucket.runs.peek();
+  }
+
+  /**
+   * This method gets the fastest run of every bucket
+   * @return the name of every bucket mapped to its fastest run (null if it has no runs), in the order the
+   * buckets were added
+   */
+  public LinkedHashMap<String, Run> getRecords() {
+    LinkedHashMap<String, Run> records = new LinkedHashMap<>();
+    for (int i = 0; i < this.buckets.size(); ++i) {
+      records.put(this.buckets.get(i).name, this.buckets.get(i).runs.peek());
+    }
+    return records;
+  }
+
+  /**
+   * This method gets the amount of bytes the heaps of every bucket take up
+   * @return the size of the heaps in bytes
+   */
+  long getMemoryBytes() {
+    long bytes = 0;
+    for (int i = 0; i < this.buckets.size(); ++i) {
+      bytes += this.buckets.get(i).runs.getMemoryBytes();
+    }
+    return bytes;
+  }
+
+  /**
+   * This private method adds a bucket for a standard distance, before there are any runs
+   */
+  private void addStandardBucket(String name, double distance) {
+    this.buckets.add(new Bucket(name, distance, distance * (1 + TOLERANCE)));
+  }
+
+  /**
+   * This private method finds the bucket with the passed in name
+   */
+  private Bucket getBucket(String name) {
+    for (int i = 0; i < this.buckets.size(); ++i) {
+      if (this.buckets.get(i).name.equalsIgnoreCase(name)) {
+        return this.buckets.get(i);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * This class defines a range of distances and every run in it ordered by time, fastest on top
+   */
+  static class Bucket {
+    String name;
+    double minDistance;
+    double maxDistance;
+    RunRecordHeap runs = new RunRecordHeap(
+        (run1, run2) -> Integer.compare(run1.timeRan.toSecondOfDay(), run2.timeRan.toSecondOfDay()));
+
+    Bucket(String name, double minDistance, double maxDistance) {
+      this.name = name;
+      this.minDistance = minDistance;
+      this.maxDistance = maxDistance;
+    }
+
+    /**
+     * tells if the distance of the passed in run is in this bucket
+     */
+    boolean contains(Run run) {
+      return run.distance >= this.minDistance && run.distance <= this.maxDistance;
+    }
+  }
+}
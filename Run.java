@@ -1,5 +1,8 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.LocalTime;
 import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.time.LocalDate;
 
 
@@ -10,12 +13,25 @@ public class Run implements Comparable<Run>{
   
   String title; // title of run
   String location; // location of run
-  String paceOfRun; // pace of the run
+  int paceOfRun; // pace of the run in seconds per mile, only formatted when asked for
   String description; // description of the run
   double distance; // total distance of the run
   int rating; // total rating of the run
   LocalTime timeRan; // time spent running
   LocalDate runDate; // the date of the run
+  // the version this run was made at, a run made before a snapshot of a RunStorage can be part of it
+  long version = SegmentedRunList.currentVersion();
+  // the id of this run, given the first time it is added to a RunStorage and saved with it. Copies of the run keep
+  // the id. 0 if the run has not been added anywhere yet
+  long id = 0;
+  // the codes of the title and location in the string pools of the RunStorage the run was added to last. A run can
+  // be in more than one RunStorage, so each one checks a code against its own pool before it uses it
+  int titleCode = RunStringPool.NO_STRING;
+  int locationCode = RunStringPool.NO_STRING;
+
+  static final AtomicLong IDS = new AtomicLong(); // the highest id handed out so far, shared by every log
+  // the dates made by Run.of, indexed by the low bits of their epoch day, so runs on the same day share one date
+  static final LocalDate[] DATES = new LocalDate[1 << 12];
   
   /**
    * Constructor for Run Object. Will need the distance and time of the run. Will Use this information for some field varaibles:
@@ -26,19 +42,14 @@ public class Run implements Comparable<Run>{
    * @param time the total time it took for this run
    */
   Run(Double distance, String time) {
-    int[] arrayOfTimes = new int[3];
-    
     // checks for any errors with arguments
-    if (distance == null || (distance - 0.0) < 0.001 ) {
-      throw new IllegalArgumentException("Invalid time, either null or negative");
+    if (!isValidDistance(distance)) {
+      throw new IllegalArgumentException("Invalid distance, either null, 0, negative or not a number");
     }
 
-    this.verifyTime(time); // private method to verify the format of time is correct
-    
     // saves the runs' distance, time of run, date of run, pace of run
     this.distance = distance;
-    arrayOfTimes = this.stringToTime(time);
-    this.timeRan = LocalTime.of(arrayOfTimes[0], arrayOfTimes[1], arrayOfTimes[2]);
+    this.timeRan = LocalTime.ofSecondOfDay(parseSeconds(time)); // verifies the format of time while parsing it
     this.runDate = LocalDate.now();
     this.paceOfRun = this.calculatePace();
 
@@ -62,19 +73,14 @@ public class Run implements Comparable<Run>{
    * @param runDate the date of the run 
    */
   Run(Double distance, String time, String dateOfRun) {
-    int[] arrayOfTimes = new int[3];
-    
     // checks for any errors with arguments
-    if (distance == null || (distance - 0.0) < 0.001 ) {
-      throw new IllegalArgumentException("Invalid time, either null or negative");
+    if (!isValidDistance(distance)) {
+      throw new IllegalArgumentException("Invalid distance, either null, 0, negative or not a number");
     }
 
-    this.verifyTime(time); // private method to verify the format of time is correct
-    
     // saves the runs' distance, time of run, pace of run
     this.distance = distance;
-    arrayOfTimes = this.stringToTime(time); // private method to parse string
-    timeRan = LocalTime.of(arrayOfTimes[0], arrayOfTimes[1], arrayOfTimes[2]);
+    timeRan = LocalTime.ofSecondOfDay(parseSeconds(time)); // verifies the format of time while parsing it
     paceOfRun = this.calculatePace();
 
     // will convert the String dateOfRun into a LocalTime object 
@@ -88,6 +94,99 @@ public class Run implements Comparable<Run>{
 
   }
   
+  /**
+   * Constructor for Run Object that is used by file readers which have already parsed the run into numbers.
+   * Will Use this information for some field varaibles:
+   * distance 
+   * timeRan
+   * paceOfRun
+   * runDate
+   * 
+   * @param distance the total distance of the run
+   * @param seconds the total time of the run in seconds
+   * @param runDate the date of the run
+   */
+  Run(double distance, int seconds, LocalDate runDate) {
+    // checks for any errors with arguments
+    if (!isValidDistance(distance)) {
+      throw new IllegalArgumentException("Invalid distance, either 0, negative or not a number");
+    }
+    if (seconds <= 0 || seconds >= 24 * 60 * 60) {
+      throw new IllegalArgumentException("Time is not properly formatted. Ex. (00:00:00)");
+    }
+
+    // saves the runs' distance, time of run, date of run, pace of run
+    this.distance = distance;
+    this.timeRan = LocalTime.ofSecondOfDay(seconds);
+    this.runDate = runDate;
+    this.paceOfRun = this.calculatePace();
+
+    // initalize remaining fields
+    title = null;
+    location = null;
+    rating = 0;
+    description = null;
+  }
+
+  /**
+   * This method makes a new Run with the same fields as this run
+   * @return a copy of this run
+   */
+  Run copy() {
+    Run toReturn = new Run(this.distance, this.timeRan.toSecondOfDay(), this.runDate);
+    toReturn.title = this.title;
+    toReturn.location = this.location;
+    toReturn.rating = this.rating;
+    toReturn.description = this.description;
+    toReturn.id = this.id;
+    toReturn.titleCode = this.titleCode;
+    toReturn.locationCode = this.locationCode;
+    return toReturn;
+  }
+
+  /**
+   * This method makes a run out of numbers that are already parsed, for bulk importers like the snapshot and
+   * journal readers. Runs that are close together in time share the same LocalDate instead of each making one
+   * @param distance the total distance of the run
+   * @param seconds the total time of the run in seconds
+   * @param epochDay the date of the run as the amount of days since 1970-01-01
+   * @return the new run
+   */
+  static Run of(double distance, int seconds, long epochDay) {
+    int slot = (int) epochDay & (DATES.length - 1);
+    LocalDate date = DATES[slot];
+    // a LocalDate can not change, so a date another thread just put in the cache is always complete
+    if (date == null || date.toEpochDay() != epochDay) {
+      date = LocalDate.ofEpochDay(epochDay);
+      DATES[slot] = date;
+    }
+    return new Run(distance, seconds, date);
+  }
+
+  /**
+   * This method gets a new id that no run has had before
+   * @return the next id, ids start at 1
+   */
+  static long nextId() {
+    return IDS.incrementAndGet();
+  }
+
+  /**
+   * This method makes sure no new id is at or below the passed in id, used when runs are loaded with their ids
+   * @param id an id that is already used
+   */
+  static void reserveId(long id) {
+    IDS.accumulateAndGet(id, Math::max);
+  }
+
+  /**
+   * returns the field varaible id
+   * @return the id of the run, or 0 if it has not been added to a log yet
+   */
+  public long getId() {
+    return this.id;
+  }
+
   /**
    * this methods sets the title of the run with the passed in argument
    * @param title the title of run
@@ -110,11 +209,20 @@ public class Run implements Comparable<Run>{
    * @param rating the overall rating of the run
    */
   public void setRating(int rating) {
+    checkRating(rating);
+    this.rating = rating;
+  }
+
+  /**
+   * This method checks that the passed in rating is from the range of 1-10 (inclusive)
+   * @param rating the rating to check
+   * @throws IllegalArgumentException if the rating is out of range
+   */
+  static void checkRating(int rating) {
     // the rating should be between 1-10
     if (rating > 10 || rating < 1) {
       throw new IllegalArgumentException("Invalid range for rating");
     }
-    this.rating = rating;
   }
 
   /**
@@ -123,15 +231,52 @@ public class Run implements Comparable<Run>{
    * @param time the new time for the run
    */
   public void setRunTime(String time) {
+    timeRan = LocalTime.ofSecondOfDay(parseRunTime(time));
+    this.paceOfRun = this.calculatePace();
+  }
+
+  /**
+   * This method parses the passed in new time for a run the same way setRunTime does, without changing any run
+   * @param time the new time for a run
+   * @return the total amount of seconds of the time
+   */
+  static int parseRunTime(String time) {
     // a check for the string to not be null or empty
     if (time == null || time.trim().isBlank()) {
       throw new NoSuchElementException("Invalid time, either null or blank");
     }
-    int[] arrayOfTimes = new int[3];
-    this.verifyTime(time);
-    arrayOfTimes = this.stringToTime(time);
-    timeRan = LocalTime.of(arrayOfTimes[0], arrayOfTimes[1], arrayOfTimes[2]);
-    this.calculatePace();
+    return parseSeconds(time);
+  }
+
+  /**
+   * Resets the total time for this run to the passed in amount of seconds and recalculates pace
+   * @param seconds the new time for the run in seconds
+   */
+  void setRunSeconds(int seconds) {
+    checkSeconds(seconds);
+    this.timeRan = LocalTime.ofSecondOfDay(seconds);
+    this.paceOfRun = this.calculatePace();
+  }
+
+  /**
+   * This method checks that the passed in distance can be the distance of a run, a number of at least 0.001 miles.
+   * NaN and infinity are not valid, they would break the pace and every total the run is added to
+   * @param distance the distance to check
+   * @return true if the distance is valid
+   */
+  static boolean isValidDistance(Double distance) {
+    return distance != null && Double.isFinite(distance) && distance >= 0.001;
+  }
+
+  /**
+   * This method checks that the passed in amount of seconds is a valid time for a run, more than 0 and less than a day
+   * @param seconds the time to check
+   * @throws IllegalArgumentException if the time is out of range
+   */
+  static void checkSeconds(int seconds) {
+    if (seconds <= 0 || seconds >= 24 * 60 * 60) {
+      throw new IllegalArgumentException("Time is not properly formatted. Ex. (00:00:00)");
+    }
   }
 
   /**
@@ -143,49 +288,59 @@ public class Run implements Comparable<Run>{
   }
   
   /**
-   * This method will take a string for the time of run and parse it correctly so the returned array can be used 
-   * to make a LocalTime object
-   * @param time the string containing the time of the run. Should be formatted as so: (00:00:00) or (00:00) or (00)
-   * @return an array where each index corresponds to [hour,minutes,seconds]
+   * This method parses a time formatted as so: (00:00:00) or (00:00) or (00) into its total amount of seconds.
+   * The time is checked while its characters are read, in one pass and without splitting it up. This is the only
+   * place times are checked, RunFileReader hands it the bytes of a file as a CharSequence
+   * @param time the string containing the time of the run
+   * @return the total amount of seconds of the time
+   * @throws IllegalArgumentException if the time is empty, not properly formatted, 0 or a day or longer
    */
-  private int[] stringToTime(String time) {
-    int hours = 0;
-    int minutes = 0;
-    int seconds = 0;
-
-    // split the array on the ":" symbol
-    String[] parsedTime = time.split(":");
-    int[] toReturn = new int[3];
-
-    // has only seconds (00)
-    if (parsedTime.length == 1) {
-      seconds = Integer.parseInt(parsedTime[0]);
-      toReturn[0] = 0;
-      toReturn[1] = 0;
-      toReturn[2] = seconds;
+  static int parseSeconds(CharSequence time) {
+    if (time == null || time.length() == 0) {
+      throw new IllegalArgumentException("Time is empty");
+    }
+    int total = 0;
+    int part = 0;
+    int parts = 1;
+    boolean digits = false;
+    for (int i = 0; i < time.length(); ++i) {
+      char curr = time.charAt(i);
+      if (curr >= '0' && curr <= '9') {
+        part = part * 10 + (curr - '0');
+        digits = true;
+        // no valid part gets this large, stops the part from overflowing
+        if (part >= 24 * 60 * 60) {
+          throw new IllegalArgumentException("Time is not properly formatted. Ex. (00:00:00)");
+        }
+      }
+      else if (curr == ':' && digits && parts < 3) {
+        // every part after the first one is minutes or seconds
+        if (parts > 1 && part >= 60) {
+          throw new IllegalArgumentException("Time is not properly formatted. Ex. (00:00:00)");
+        }
+        total = total * 60 + part;
+        part = 0;
+        digits = false;
+        ++parts;
+      }
+      else if (curr == ':') {
+        throw new IllegalArgumentException("Time is not properly formatted. Ex. (00:00:00)");
+      }
+      else {
+        throw new IllegalArgumentException("Time contains unexpected characters");
+      }
     }
-      
-    // has only seconds,minutes (00:00)
-    else if (parsedTime.length == 2) {
-      minutes = Integer.parseInt(parsedTime[0]);
-      seconds = Integer.parseInt(parsedTime[1]);
-      toReturn[0] = seconds;
-      toReturn[1] = minutes;
-      toReturn[2] = 0;
-      
+    if (!digits || part >= 60) {
+      throw new IllegalArgumentException("Time is not properly formatted. Ex. (00:00:00)");
     }
-      
-    // has seconds,minutes,hours (00:00:00)
-    else if (parsedTime.length == 3) {
-      hours = Integer.parseInt(parsedTime[0]);
-      minutes = Integer.parseInt(parsedTime[1]);
-      seconds = Integer.parseInt(parsedTime[2]);        
-      toReturn[0] = hours;
-      toReturn[1] = minutes;
-      toReturn[2] = seconds;
-      
+    total = total * 60 + part;
+    if (total == 0) {
+      throw new IllegalArgumentException("Time is 0, pick a valid time value that is greater than 0");
     }
-    return toReturn;
+    if (total >= 24 * 60 * 60) {
+      throw new IllegalArgumentException("Time is not properly formatted. Ex. (00:00:00)");
+    }
+    return total;
   }
   
   /**
@@ -213,11 +368,16 @@ public class Run implements Comparable<Run>{
   }
 
   /**
-   * returns the field variable paceOfRun
+   * returns the pace of the run formatted as so (00:00) or (0:00)
    * @return the pace of the run determined by the distance / time
    */
   public String getPace() {
-    return this.paceOfRun;
+    int minutes = this.paceOfRun / 60;
+    int seconds = this.paceOfRun % 60;
+    if (seconds < 10) {
+      return minutes + ":0" + seconds;
+    }
+    return minutes + ":" + seconds;
   }
 
   /**
@@ -228,54 +388,28 @@ public class Run implements Comparable<Run>{
     return this.description;
   }
   /**
-   * this method calculates the average minutes/mile of this run based on the passed in 
+   * this method calculates the average pace of this run based on the passed in 
    * distance and time of run
-   * @return a string that has the average pace of the run, formatted as so (00:00) or (0:00)
+   * @return the average pace of the run in seconds per mile, rounded to the closest second
    */
-  private String calculatePace() {
-    int wholeNum = 0;
-    double pace = 0.0;
-    int temp = 0;
-    String wholeNumSave = "";
-    String fractionNumSave = "";
-    String toReturn = "";
-
-    
-    // calculates pace based on distance and time of run and stores into a double variable
-    int hoursToMinutes = this.timeRan.getHour() * 60;
-    Double totalMinutes = (double)hoursToMinutes + (double)this.timeRan.getMinute();
-    totalMinutes = totalMinutes + ((double)this.timeRan.getSecond() / 60);
-    pace = totalMinutes / this.distance;
-
-    // convert pace to a formatted string
-    wholeNum = (int)pace; // save whole num
-    pace = pace - (int)pace; // save fraction part
-    pace = 60 * pace;
-    pace = Math.round(pace);
-    temp = (int)pace;
-    wholeNumSave = "" + wholeNum; // store whole num in a string
-    fractionNumSave = "" + temp;  // store fraction part of num in a string
-
-    // if the fraction part of the string is # --> convert to 0#
-    if (fractionNumSave.length() == 1) {
-      fractionNumSave = "0" + fractionNumSave;
-    }
-    toReturn = wholeNumSave + ":" + fractionNumSave;
-
-    return toReturn;  
-    
+  private int calculatePace() {
+    int totalSeconds = this.timeRan.toSecondOfDay();
+    return (int) Math.round(totalSeconds / this.distance);
   }
   
 
 
   /**
-   * Method to compare two runs based on the date of the run 
-   * @return 0 if both runs are equal, negative int if this run is later than the passed in run, positive if this run is earlier 
-   * than the passed in run
+   * Method to compare two runs based on the date of the run, runs on the same date are ordered by their id so no
+   * two runs in a log are equal. Ids are handed out in the order runs are added, so runs on the same day stay in
+   * the order they were added
+   * @return 0 if both runs are equal, negative int if this run is earlier than the passed in run, positive if this
+   * run is later than the passed in run
    */
   @Override
   public int compareTo(Run o) {
-    return this.runDate.compareTo(o.runDate);
+    int compare = this.runDate.compareTo(o.runDate);
+    return compare != 0 ? compare : Long.compare(this.id, o.id);
   }
 
   /**
@@ -284,64 +418,41 @@ public class Run implements Comparable<Run>{
    */
   @Override
   public String toString() {
-    // format the return string from LocalTime.toString()
-    String timeHour = "" + this.timeRan.getHour();
-    String timeMinute = "" + this.timeRan.getMinute();
-    String timeSeconds = "" + this.timeRan.getSecond();
-    if (timeHour.length() == 1) {
-      timeHour = "0" + timeHour;
-    }
-    if (timeMinute.length() == 1) {
-      timeMinute = "0" + timeMinute;
+    StringBuilder toReturn = new StringBuilder(96);
+    try {
+      this.appendTo(toReturn);
     }
-    if (timeSeconds.length() == 1) {
-      timeSeconds = "0" + timeSeconds;
+    catch (IOException e) {
+      throw new UncheckedIOException(e); // a StringBuilder never throws
     }
-    String runTime = "" + timeHour + ":" + timeMinute + ":" + timeSeconds;
-    String toReturn = "";
-
-    toReturn = "Date of Run: " + this.runDate.toString() + "\n" + "Time Ran: " + runTime + "\n" +
-            "Distance Ran: " + this.distance + "\n" + "Pace of Run: " + this.paceOfRun; 
-    return toReturn;
-    
+    return toReturn.toString();
   }
 
   /**
-   * This private method verifies the time is in the right format. 
-   * (1) Characters in the string should either be a digit or ':'
-   * (2) the sum of all the numbers should not be 0 (meaning the time is 0)
-   * @param time the string representing time
-   * @return true if it is propperly formatted, false otherwise 
+   * This method writes the same text as toString straight into the passed in Appendable, so a lot of runs can be
+   * written out without making a String for each one
+   * @param out where the run is written to
+   * @throws IOException if out could not be written to
    */
-  private void verifyTime(String time) {
-    if (time == null || time.trim().isBlank()) {
-      throw new IllegalArgumentException("Time is empty");
-    }
-    // verify the appropriate charaters are found
-    for (int i = 0; i < time.length(); ++ i) {
-      if (Character.isDigit(time.charAt(i))) {
-        continue;
-      }
-      else if (time.charAt(i) == ':') {
-        continue;
-      }
-      // if code reaches here than character is not a digit or ':'
-      throw new IllegalArgumentException("Time contains unexpected characters");
-    }
+  public void appendTo(Appendable out) throws IOException {
+    out.append("Date of Run: ").append(this.runDate.toString()).append('\n');
+    out.append("Time Ran: ");
+    appendTwoDigits(out, this.timeRan.getHour());
+    out.append(':');
+    appendTwoDigits(out, this.timeRan.getMinute());
+    out.append(':');
+    appendTwoDigits(out, this.timeRan.getSecond());
+    out.append('\n');
+    out.append("Distance Ran: ").append(Double.toString(this.distance)).append('\n');
+    out.append("Pace of Run: ").append(Integer.toString(this.paceOfRun / 60)).append(':');
+    appendTwoDigits(out, this.paceOfRun % 60);
+  }
 
-    // verify the format of the characters are good
-    String[] toVerify = time.split(":");
-    // should only be 3 index's max 00 > Hour (00:00:00) , Minutes (00:00), Seconds (00)
-    if (toVerify.length > 3 || toVerify.length == 0) { 
-      throw new IllegalArgumentException("Time is not properly formatted. Ex. (00:00:00)");
-    }
-    int sum = 0;
-    for (int i = 0; i < toVerify.length; ++i) {
-      sum +=Integer.parseInt(toVerify[i]);
-    }
-    if (sum == 0) {
-      throw new IllegalArgumentException("Time is 0, pick a valid time value that is greater than 0");
-    }
+  /**
+   * This private method writes a number that is less than 100 with a 0 in front of it if it only has one digit
+   */
+  private static void appendTwoDigits(Appendable out, int value) throws IOException {
+    out.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
   }
 
 
@@ -1,16 +1,145 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.Scanner;
 
 public class RunApp {
+
+  static final Path SNAPSHOT_FILE = Path.of("runlog.snapshot"); // where the log is saved between runs of the app
+  static final Path JOURNAL_FILE = Path.of("runlog.journal"); // every change made since the snapshot was saved
+  static final int DEFAULT_PORT = 8080; // the port of the server if none is passed in after --server
+
   public static void main (String[] args) {
+    if (args.length > 0 && args[0].equals("--server")) {
+      int port = args.length > 1 ? parsePort(args[1]) : DEFAULT_PORT;
+      if (port == -1 || args.length > 2) {
+        printUsage();
+        return;
+      }
+      runServer(port);
+      return;
+    }
+    if (args.length > 0 && args[0].equals("--batch")) {
+      if (args.length != 2) {
+        printUsage();
+        return;
+      }
+      runBatch(args[1]);
+      return;
+    }
+    if (args.length > 0) {
+      printUsage();
+      return;
+    }
     RunStorage runCollection = new RunStorage();
     Scanner input = new Scanner(System.in);
     FrontendRun myFront = new FrontendRun(input, runCollection);
     System.out.println("Welcome to your Virtual Running Log!");
     System.out.println("------------------------------------");
 
-    myFront.loopUI();
+    // loads the runs and changes that were saved the last time the app was open, every change is saved from now on
+    RunJournal journal = null;
+    try {
+      journal = RunJournal.open(runCollection, SNAPSHOT_FILE, JOURNAL_FILE);
+      if (runCollection.getSize() > 0) {
+        System.out.println("Loaded " + runCollection.getSize() + " runs from your saved log");
+      }
+    }
+    catch (IOException e) {
+      System.out.println("Your saved log could not be loaded, changes will not be saved: " + e.getMessage());
+    }
+
+    myFront.loopMainMenu();
+
+    // saves the whole log to the snapshot so the next start does not have to replay changes
+    if (journal != null) {
+      try {
+        journal.close();
+      }
+      catch (IOException e) {
+        System.out.println("Your log could not be saved: " + e.getMessage());
+      }
+    }
 
     System.out.println("Thank you for using this Running Log!");
     System.out.println("Be back soon!");
   }
+
+  /**
+   * This method prints how the app can be started
+   */
+  static void printUsage() {
+    System.out.println("Usage: java RunApp                      shows the menus");
+    System.out.println("       java RunApp --batch <file | ->   runs a file of commands");
+    System.out.println("       java RunApp --server [port]      serves the log over HTTP, port " + DEFAULT_PORT
+        + " if none is passed in");
+  }
+
+  /**
+   * This method reads the port passed in after --server
+   * @param port the argument
+   * @return the port, or -1 if it is not a number from 0 to 65535
+   */
+  static int parsePort(String port) {
+    try {
+      int value = Integer.parseInt(port);
+      return value >= 0 && value <= 65535 ? value : -1;
+    }
+    catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * This method runs a file of commands against the saved log instead of showing the menus (see BatchRunner):
+   * java RunApp --batch commands.txt
+   * @param fileName the file of commands, or - to read them from System.in
+   */
+  static void runBatch(String fileName) {
+    RunStorage runCollection = new RunStorage();
+    Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16);
+    try {
+      RunJournal journal = RunJournal.open(runCollection, SNAPSHOT_FILE, JOURNAL_FILE);
+      try {
+        new BatchRunner(runCollection, out).runFile(fileName);
+      }
+      finally {
+        journal.close(); // saves the whole log to the snapshot
+      }
+    }
+    catch (IOException e) {
+      System.out.println("The commands could not be run: " + e.getMessage());
+    }
+  }
+
+  /**
+   * This method serves the saved log over HTTP instead of the menus, until the app is stopped:
+   * java RunApp --server [port]
+   * @param port the port to listen on
+   */
+  static void runServer(int port) {
+    RunStorage runCollection = new RunStorage();
+    try {
+      RunJournal journal = RunJournal.open(runCollection, SNAPSHOT_FILE, JOURNAL_FILE);
+      RunServer server = new RunServer(new ConcurrentRunStorage(runCollection), port);
+      // saves the log when the app is stopped (Ctrl-C)
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+        server.stop();
+        try {
+          journal.close();
+        }
+        catch (IOException e) {
+          System.out.println("Your log could not be saved: " + e.getMessage());
+        }
+      }));
+      server.start();
+      System.out.println("Serving " + runCollection.getSize() + " runs on http://127.0.0.1:" + server.getPort());
+    }
+    catch (IOException e) {
+      System.out.println("The server could not be started: " + e.getMessage());
+    }
+  }
 }
@@ -0,0 +1,585 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class is a small timing harness for the Running Log. It is run from the command line and prints how
+ * long the main operations of RunStorage take for a few different log sizes:
+ * java RunBenchmark
+ * Passing "concurrent" only runs the stress test and throughput comparison of ConcurrentRunStorage:
+ * java RunBenchmark concurrent
+ * Passing "metrics" only checks that recording metrics does not allocate and times what it costs:
+ * java RunBenchmark metrics
+ * Passing "strings" only measures how many String copies the string pools save and times grouping by location:
+ * java RunBenchmark strings
+ * The cost of single operations for different log sizes and date distributions is measured by RunMicroBenchmark
+ */
+public class RunBenchmark {
+
+  static final int WARMUP_ROUNDS = 2; // rounds that are run before the timed round so the JIT has compiled the code
+
+  static final int STRESS_SECONDS = 3; // how long the concurrent stress test runs
+  static final int THROUGHPUT_MILLIS = 1000; // how long each concurrent throughput measurement runs
+  static final int WRITE_PERCENT = 5; // the share of operations in the throughput measurement that are changes
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    if (args.length > 0 && args[0].equalsIgnoreCase("concurrent")) {
+      runConcurrent();
+      return;
+    }
+    if (args.length > 0 && args[0].equalsIgnoreCase("metrics")) {
+      runMetrics();
+      return;
+    }
+    if (args.length > 0 && args[0].equalsIgnoreCase("strings")) {
+      runStrings();
+      return;
+    }
+    System.out.println("--------------------- Load Time ---------------------");
+    System.out.println("lines, addRun per line (ms), readFile (ms)");
+    int[] sizes = {1_000, 5_000, 20_000};
+    for (int i = 0; i < sizes.length; ++i) {
+      File csv = writeCsv(sizes[i], new Random(42));
+      long perLine = 0;
+      long bulk = 0;
+      for (int round = 0; round <= WARMUP_ROUNDS; ++round) {
+        perLine = timeLoadPerLine(csv);
+        bulk = timeReadFile(csv);
+      }
+      System.out.println(sizes[i] + ", " + perLine + ", " + bulk);
+      csv.delete();
+    }
+
+    System.out.println("--------------------- Parallel Load Time ---------------------");
+    System.out.println("lines, sequential (ms), parallel (ms), threads");
+    int[] largeSizes = {200_000, 1_000_000, 3_000_000};
+    for (int i = 0; i < largeSizes.length; ++i) {
+      File csv = writeCsv(largeSizes[i], new Random(42));
+      long sequential = 0;
+      long parallel = 0;
+      for (int round = 0; round <= WARMUP_ROUNDS; ++round) {
+        sequential = timeSequentialRead(csv);
+        parallel = timeParallelRead(csv);
+      }
+      System.out.println(largeSizes[i] + ", " + sequential + ", " + parallel + ", "
+          + ForkJoinPool.commonPool().getParallelism());
+      csv.delete();
+    }
+
+    System.out.println("--------------------- Fastest Rescan ---------------------");
+    System.out.println("runs, removeRun(fastest) (ms)");
+    RunStorage storage = new RunStorage();
+    storage.addAll(randomRuns(1_000_000, new Random(42)));
+    for (int round = 0; round <= WARMUP_ROUNDS; ++round) {
+      long start = System.nanoTime();
+      storage.removeRun(storage.getFastest());
+      if (round == WARMUP_ROUNDS) {
+        System.out.println(storage.getSize() + ", " + (System.nanoTime() - start) / 1_000_000);
+      }
+    }
+
+    System.out.println("--------------------- Snapshot ---------------------");
+    System.out.println("runs, saveSnapshot (ms), loadSnapshot (ms), bytes");
+    Path snapshot = Files.createTempFile("runs", ".snapshot");
+    for (int round = 0; round <= WARMUP_ROUNDS; ++round) {
+      long start = System.nanoTime();
+      storage.saveSnapshot(snapshot);
+      long save = (System.nanoTime() - start) / 1_000_000;
+      start = System.nanoTime();
+      new RunStorage().loadSnapshot(snapshot);
+      long load = (System.nanoTime() - start) / 1_000_000;
+      if (round == WARMUP_ROUNDS) {
+        System.out.println(storage.getSize() + ", " + save + ", " + load + ", " + Files.size(snapshot));
+      }
+    }
+    Files.delete(snapshot);
+
+    runConcurrent();
+  }
+
+  /**
+   * This method checks that the hot paths do not allocate anything more while metrics are on, and compares how
+   * long adding and removing a run takes with metrics on and off
+   */
+  static void runMetrics() {
+    System.out.println("--------------------- Metrics Allocation ---------------------");
+    if (!metricsAllocationTest()) {
+      System.out.println("FAILED");
+      System.exit(1);
+    }
+    System.out.println("passed");
+
+    System.out.println("--------------------- Metrics Overhead ---------------------");
+    System.out.println("metrics, addRun + removeRun (ns/op)");
+    RunStorage storage = new RunStorage();
+    storage.addAll(randomRuns(200_000, new Random(42)));
+    List<Run> toAdd = randomRuns(1 << 12, new Random(7));
+    boolean wasEnabled = RunMetrics.enabled;
+    for (int round = 0; round <= WARMUP_ROUNDS; ++round) {
+      RunMetrics.enabled = false;
+      long off = timeAddRemove(storage, toAdd);
+      RunMetrics.enabled = true;
+      long on = timeAddRemove(storage, toAdd);
+      if (round == WARMUP_ROUNDS) {
+        System.out.println("off, " + off);
+        System.out.println("on, " + on);
+      }
+    }
+    RunMetrics.enabled = wasEnabled;
+    System.out.println(RunMetrics.INSTANCE);
+  }
+
+  /**
+   * This method gives 1,000,000 runs their own copy of one of a few hundred locations and a few thousand titles,
+   * like a CSV file does, and compares the String copies before and after they are added. Then it times grouping
+   * the runs by location with the location codes against grouping them with a HashMap of the location Strings
+   */
+  static void runStrings() {
+    System.out.println("--------------------- String Pool ---------------------");
+    Random random = new Random(42);
+    List<Run> runs = randomRuns(1_000_000, random);
+    for (int i = 0; i < runs.size(); ++i) {
+      runs.get(i).location = new String("Location " + random.nextInt(300));
+      runs.get(i).title = new String("Title " + random.nextInt(3000));
+    }
+    System.out.println("distinct String objects before adding, " + distinctStrings(runs));
+    RunStorage storage = new RunStorage();
+    storage.addAll(runs);
+    System.out.println("distinct String objects after adding, " + distinctStrings(runs));
+
+    System.out.println("--------------------- Group By Location ---------------------");
+    System.out.println("runs, codes (ms), HashMap (ms), locations");
+    for (int round = 0; round <= WARMUP_ROUNDS; ++round) {
+      long start = System.nanoTime();
+      int withCodes = storage.getLocationTotals(LocalDate.MIN, LocalDate.MAX).size();
+      long codes = (System.nanoTime() - start) / 1_000_000;
+      start = System.nanoTime();
+      HashMap<String, RunTotals.Total> byString = new HashMap<>();
+      List<Run> all = storage.getRuns(LocalDate.MIN, LocalDate.MAX);
+      for (int i = 0; i < all.size(); ++i) {
+        Run currRun = all.get(i);
+        RunTotals.Total total = byString.computeIfAbsent(currRun.location, location -> new RunTotals.Total());
+        total.distance += currRun.distance;
+        total.seconds += currRun.timeRan.toSecondOfDay();
+        ++total.count;
+      }
+      long hashMap = (System.nanoTime() - start) / 1_000_000;
+      if (withCodes != byString.size()) {
+        throw new IllegalStateException("Grouping by code found " + withCodes + " locations, not " + byString.size());
+      }
+      if (round == WARMUP_ROUNDS) {
+        System.out.println(storage.getSize() + ", " + codes + ", " + hashMap + ", " + withCodes);
+      }
+    }
+  }
+
+  /**
+   * This method counts the different String objects used as titles and locations by the passed in runs
+   * @param runs the runs to look at
+   * @return the amount of distinct String objects, equal Strings that are different objects are counted twice
+   */
+  static int distinctStrings(List<Run> runs) {
+    Set<String> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (int i = 0; i < runs.size(); ++i) {
+      seen.add(runs.get(i).title);
+      seen.add(runs.get(i).location);
+    }
+    return seen.size();
+  }
+
+  /**
+   * This method checks that the metrics path allocates nothing. It records latencies straight into a histogram,
+   * then times getRunById, which allocates nothing itself, with RunMetrics.start and record around every call.
+   * Every byte the thread allocated in the timed loop comes from the metrics
+   * @return true if neither loop allocated anything besides reading the allocation counter
+   */
+  static boolean metricsAllocationTest() {
+    if (RunMicroBenchmark.allocatedBytes() < 0) {
+      System.out.println("this JVM can not count allocated bytes");
+      return false;
+    }
+    // reading the allocation counter allocates a few hundred bytes itself, which every loop below includes
+    long overhead = 0;
+    for (int round = 0; round <= WARMUP_ROUNDS; ++round) {
+      long before = RunMicroBenchmark.allocatedBytes();
+      overhead = RunMicroBenchmark.allocatedBytes() - before;
+    }
+    boolean wasEnabled = RunMetrics.enabled;
+    RunMetrics.enabled = true;
+    RunMetrics.LatencyHistogram histogram = new RunMetrics.LatencyHistogram("test");
+    long recorded = 0;
+    for (int round = 0; round <= WARMUP_ROUNDS; ++round) {
+      long before = RunMicroBenchmark.allocatedBytes();
+      for (int i = 0; i < 1_000_000; ++i) {
+        histogram.record(RunMetrics.start());
+        histogram.recordNanos(i * 31L);
+      }
+      recorded = RunMicroBenchmark.allocatedBytes() - before - overhead;
+    }
+    System.out.println("recording 2M latencies allocated " + recorded + " bytes");
+
+    RunStorage storage = new RunStorage();
+    List<Run> runs = randomRuns(1 << 12, new Random(42));
+    storage.addAll(runs);
+    long[] ids = new long[runs.size()];
+    for (int i = 0; i < ids.length; ++i) {
+      ids[i] = runs.get(i).id;
+    }
+    long timed = 0;
+    int found = 0;
+    for (int round = 0; round <= WARMUP_ROUNDS; ++round) {
+      long before = RunMicroBenchmark.allocatedBytes();
+      for (int i = 0; i < 1_000_000; ++i) {
+        long start = RunMetrics.start();
+        if (storage.getRunById(ids[i & (ids.length - 1)]) != null) {
+          ++found;
+        }
+        histogram.record(start);
+      }
+      timed = RunMicroBenchmark.allocatedBytes() - before - overhead;
+    }
+    RunMetrics.enabled = wasEnabled;
+    System.out.println("timing 1M lookups allocated " + timed + " bytes (" + found + " found)");
+    // one allocation per call would be at least 16MB
+    return recorded < 256 && timed < 256;
+  }
+
+  /**
+   * This private method times adding and then removing every passed in run
+   * @return the average nanoseconds of one add and remove
+   */
+  private static long timeAddRemove(RunStorage storage, List<Run> toAdd) {
+    long start = System.nanoTime();
+    for (int repeat = 0; repeat < 25; ++repeat) {
+      for (int i = 0; i < toAdd.size(); ++i) {
+        storage.addRun(toAdd.get(i));
+        storage.removeRun(toAdd.get(i));
+      }
+    }
+    return (System.nanoTime() - start) / (25L * toAdd.size());
+  }
+
+  /**
+   * This method runs the stress test of ConcurrentRunStorage and compares its throughput against a RunStorage
+   * where every method is synchronized
+   * @throws InterruptedException if the thread was interrupted while waiting for the worker threads
+   */
+  static void runConcurrent() throws InterruptedException {
+    System.out.println("--------------------- Concurrent Stress ---------------------");
+    System.out.println(stressTest(4, 2) ? "passed" : "FAILED");
+
+    System.out.println("--------------------- Concurrent Throughput ---------------------");
+    System.out.println("threads, synchronized (ops/ms), concurrent (ops/ms)");
+    List<Run> runs = randomRuns(200_000, new Random(42));
+    int[] threadCounts = {1, 2, 4, 8};
+    for (int i = 0; i < threadCounts.length; ++i) {
+      long locked = 0;
+      long concurrent = 0;
+      for (int round = 0; round <= WARMUP_ROUNDS; ++round) {
+        ConcurrentRunStorage synchronizedStorage = new SynchronizedRunStorage();
+        synchronizedStorage.addAll(runs);
+        locked = timeThroughput(synchronizedStorage, threadCounts[i]);
+        ConcurrentRunStorage concurrentStorage = new ConcurrentRunStorage();
+        concurrentStorage.addAll(runs);
+        concurrent = timeThroughput(concurrentStorage, threadCounts[i]);
+      }
+      System.out.println(threadCounts[i] + ", " + locked + ", " + concurrent);
+    }
+  }
+
+  /**
+   * This method has reader threads read ranges, records and single runs while writer threads add, edit and
+   * remove their own runs. Every read is checked while the threads run, and the storage is checked against the
+   * runs that should be in it once they are done
+   * @param readers the amount of reader threads
+   * @param writers the amount of writer threads
+   * @return true if every check passed
+   * @throws InterruptedException if the thread was interrupted while waiting for the worker threads
+   */
+  static boolean stressTest(int readers, int writers) throws InterruptedException {
+    ConcurrentRunStorage storage = new ConcurrentRunStorage();
+    List<Run> initial = randomRuns(50_000, new Random(7));
+    storage.addAll(initial);
+    long end = System.nanoTime() + STRESS_SECONDS * 1_000_000_000L;
+    AtomicBoolean passed = new AtomicBoolean(true);
+    List<List<Run>> written = new ArrayList<>(); // the runs each writer still has in the storage
+    ArrayList<Thread> threads = new ArrayList<>();
+
+    for (int i = 0; i < writers; ++i) {
+      ArrayList<Run> own = new ArrayList<>();
+      written.add(own);
+      Random random = new Random(100 + i);
+      threads.add(new Thread(() -> {
+        while (System.nanoTime() < end) {
+          int operation = random.nextInt(3);
+          if (operation == 0 || own.isEmpty()) {
+            Run toAdd = randomRuns(1, random).get(0);
+            storage.addRun(toAdd);
+            own.add(toAdd);
+          }
+          else if (operation == 1) {
+            Run toRemove = own.remove(random.nextInt(own.size()));
+            Run removed = storage.removeRun(toRemove);
+            if (removed == null || removed.id != toRemove.id) {
+              passed.set(false);
+            }
+          }
+          else {
+            storage.setRunTime(own.get(random.nextInt(own.size())), "00:" + (10 + random.nextInt(50)) + ":00");
+          }
+        }
+      }));
+    }
+
+    for (int i = 0; i < readers; ++i) {
+      Random random = new Random(200 + i);
+      threads.add(new Thread(() -> {
+        LocalDate firstDay = LocalDate.of(2000, 1, 1);
+        while (System.nanoTime() < end) {
+          LocalDate from = firstDay.plusDays(random.nextInt(9000));
+          LocalDate to = from.plusDays(random.nextInt(30));
+          List<Run> range = storage.getRuns(from, to);
+          for (int j = 0; j < range.size(); ++j) {
+            Run run = range.get(j);
+            LocalDate date = run.runDate;
+            // every run is in the range and in date order
+            if (date.isBefore(from) || date.isAfter(to) || (j > 0 && range.get(j - 1).runDate.isAfter(date))) {
+              passed.set(false);
+            }
+            // a run is never seen halfway through an edit, its pace always matches its time
+            if (run.paceOfRun != (int) Math.round(run.timeRan.toSecondOfDay() / run.distance)) {
+              passed.set(false);
+            }
+          }
+          if (storage.getFastest() == null || storage.getLongest() == null || storage.getSize() < initial.size()) {
+            passed.set(false);
+          }
+        }
+      }));
+    }
+
+    for (int i = 0; i < threads.size(); ++i) {
+      threads.get(i).start();
+    }
+    for (int i = 0; i < threads.size(); ++i) {
+      threads.get(i).join();
+    }
+
+    // every run that was added and not removed is still there, and the fastest and longest runs are right
+    int expectedSize = initial.size();
+    for (int i = 0; i < written.size(); ++i) {
+      expectedSize += written.get(i).size();
+    }
+    List<Run> all = storage.getRuns(LocalDate.MIN, LocalDate.MAX);
+    int fastestPace = Integer.MAX_VALUE;
+    double longest = 0;
+    for (int i = 0; i < all.size(); ++i) {
+      fastestPace = Math.min(fastestPace, all.get(i).paceOfRun);
+      longest = Math.max(longest, all.get(i).distance);
+    }
+    return passed.get() && all.size() == expectedSize && storage.getSize() == expectedSize
+        && storage.getFastest().paceOfRun == fastestPace && storage.getLongest().distance == longest;
+  }
+
+  /**
+   * This method has the passed in amount of threads read and change the storage for THROUGHPUT_MILLIS. Most
+   * operations are date range reads and fastest / longest lookups, WRITE_PERCENT of them add or remove a run
+   * @param storage the storage to use
+   * @param threadCount the amount of threads
+   * @return the amount of operations per millisecond across all threads
+   * @throws InterruptedException if the thread was interrupted while waiting for the worker threads
+   */
+  static long timeThroughput(ConcurrentRunStorage storage, int threadCount) throws InterruptedException {
+    long end = System.nanoTime() + THROUGHPUT_MILLIS * 1_000_000L;
+    AtomicLong operations = new AtomicLong();
+    Thread[] threads = new Thread[threadCount];
+    for (int i = 0; i < threadCount; ++i) {
+      Random random = new Random(300 + i);
+      threads[i] = new Thread(() -> {
+        LocalDate firstDay = LocalDate.of(2000, 1, 1);
+        ArrayList<Run> own = new ArrayList<>();
+        long count = 0;
+        while (System.nanoTime() < end) {
+          int operation = random.nextInt(100);
+          if (operation < WRITE_PERCENT) {
+            if (own.isEmpty() || random.nextBoolean()) {
+              Run toAdd = randomRuns(1, random).get(0);
+              storage.addRun(toAdd);
+              own.add(toAdd);
+            }
+            else {
+              storage.removeRun(own.remove(own.size() - 1));
+            }
+          }
+          else if (operation % 2 == 0) {
+            LocalDate from = firstDay.plusDays(random.nextInt(9000));
+            storage.getRuns(from, from.plusDays(3));
+          }
+          else {
+            storage.getFastest();
+            storage.getLongest();
+          }
+          ++count;
+        }
+        operations.addAndGet(count);
+      });
+    }
+    for (int i = 0; i < threadCount; ++i) {
+      threads[i].start();
+    }
+    for (int i = 0; i < threadCount; ++i) {
+      threads[i].join();
+    }
+    return operations.get() / THROUGHPUT_MILLIS;
+  }
+
+  /**
+   * This class is the baseline for the throughput comparison, it guards every operation the comparison uses with
+   * the monitor of this object instead of the StampedLock, so readers block each other
+   */
+  static class SynchronizedRunStorage extends ConcurrentRunStorage {
+
+    @Override
+    public synchronized void addRun(Run toAdd) {
+      this.storage.addRun(toAdd);
+    }
+
+    @Override
+    public synchronized void addAll(Collection<Run> toAdd) {
+      this.storage.addAll(toAdd);
+    }
+
+    @Override
+    public synchronized Run removeRun(Run toRemove) {
+      return this.storage.removeRun(toRemove);
+    }
+
+    @Override
+    public synchronized List<Run> getRuns(LocalDate from, LocalDate to) {
+      return new ArrayList<>(this.storage.getRuns(from, to));
+    }
+
+    @Override
+    public synchronized Run getFastest() {
+      return this.storage.getFastest();
+    }
+
+    @Override
+    public synchronized Run getLongest() {
+      return this.storage.getLongest();
+    }
+  }
+
+  /**
+   * This method makes a list of runs with random distances, times and dates
+   * @param amount the amount of runs to make
+   * @param random the random numbers used for the runs
+   * @return the runs in the order they were made
+   */
+  static List<Run> randomRuns(int amount, Random random) {
+    ArrayList<Run> runs = new ArrayList<>(amount);
+    LocalDate firstDay = LocalDate.of(2000, 1, 1);
+    for (int i = 0; i < amount; ++i) {
+      double distance = 1 + random.nextInt(2000) / 100.0;
+      int seconds = 5 * 60 + random.nextInt(3 * 60 * 60);
+      runs.add(new Run(distance, seconds, firstDay.plusDays(random.nextInt(9000))));
+    }
+    return runs;
+  }
+
+  /**
+   * This method writes a temporary CSV file of runs with random dates: Distance, Time, Date
+   * @param lines the amount of runs in the file
+   * @param random the random numbers used for the runs
+   * @return the written file
+   * @throws IOException if the temporary file could not be written
+   */
+  static File writeCsv(int lines, Random random) throws IOException {
+    File csv = File.createTempFile("runs", ".csv");
+    LocalDate firstDay = LocalDate.of(2010, 1, 1);
+    try (PrintWriter out = new PrintWriter(csv)) {
+      for (int i = 0; i < lines; ++i) {
+        double distance = 1 + random.nextInt(2000) / 100.0;
+        int minutes = 5 + random.nextInt(50);
+        int seconds = random.nextInt(60);
+        LocalDate date = firstDay.plusDays(random.nextInt(5000));
+        out.println(distance + ",01:" + (minutes < 10 ? "0" : "") + minutes + ":" + (seconds < 10 ? "0" : "")
+            + seconds + "," + date);
+      }
+    }
+    return csv;
+  }
+
+  /**
+   * This method loads the file the way readFile used to, by calling addRun for every line
+   * @param csv the file to load
+   * @return the time it took in milliseconds
+   * @throws FileNotFoundException if the file does not exist
+   */
+  static long timeLoadPerLine(File csv) throws FileNotFoundException {
+    long start = System.nanoTime();
+    RunStorage storage = new RunStorage();
+    try (Scanner scnr = new Scanner(csv)) {
+      while (scnr.hasNextLine()) {
+        String[] runToSave = scnr.nextLine().split(",");
+        storage.addRun(new Run(Double.parseDouble(runToSave[0]), runToSave[1], runToSave[2]));
+      }
+    }
+    return (System.nanoTime() - start) / 1_000_000;
+  }
+
+  /**
+   * This method loads the file through RunStorage.readFile
+   * @param csv the file to load
+   * @return the time it took in milliseconds
+   * @throws IOException if the file could not be read
+   */
+  static long timeReadFile(File csv) throws IOException {
+    long start = System.nanoTime();
+    RunStorage storage = new RunStorage();
+    storage.readFile(csv.getPath());
+    return (System.nanoTime() - start) / 1_000_000;
+  }
+
+  /**
+   * This method loads the file with the sequential memory mapped reader
+   * @param csv the file to load
+   * @return the time it took in milliseconds
+   * @throws IOException if the file could not be read
+   */
+  static long timeSequentialRead(File csv) throws IOException {
+    long start = System.nanoTime();
+    RunStorage storage = new RunStorage();
+    storage.addAll(RunFileReader.readRuns(csv.toPath()));
+    return (System.nanoTime() - start) / 1_000_000;
+  }
+
+  /**
+   * This method loads the file through RunStorage.readFileParallel
+   * @param csv the file to load
+   * @return the time it took in milliseconds
+   * @throws IOException if the file could not be read
+   */
+  static long timeParallelRead(File csv) throws IOException {
+    long start = System.nanoTime();
+    RunStorage storage = new RunStorage();
+    storage.readFileParallel(csv.getPath());
+    return (System.nanoTime() - start) / 1_000_000;
+  }
+}
@@ -0,0 +1,427 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * This class reads a CSV file of Runs by memory mapping the file and scanning its bytes directly. Each line is
+ * formatted as such: Distance, Time, Date(If applicable)
+ * The distance, time and date are parsed straight from the mapped bytes into numbers, so no String is made per line
+ */
+public class RunFileReader {
+
+  static final long MAX_WINDOW = Integer.MAX_VALUE; // the most bytes that can be mapped at once
+  static final String BAD_LINE = "Error: did not have nessasary data to log run";
+  static final int MIN_CHUNK = 1 << 20; // the smallest byte range that is parsed by its own task
+  static final int CHUNKS_PER_THREAD = 4; // more chunks than threads so the work evens out
+
+  // powers of ten that are exactly representable as a double
+  private static final double[] POWERS_OF_TEN = {
+      1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+      1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
+  private static final long MAX_EXACT_MANTISSA = 1L << 53; // largest whole number a double holds exactly
+
+  /**
+   * This method reads every Run in the passed in file, in the order they appear in the file. If a line does not have
+   * the nessasary data, an error is printed and the runs read before that line are returned
+   * @param file the path of the CSV file
+   * @return the runs of the file
+   * @throws IOException if the file could not be opened or mapped
+   */
+  public static List<Run> readRuns(Path file) throws IOException {
+    ArrayList<Run> parsedRuns = new ArrayList<>();
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long fileSize = channel.size();
+      long position = 0;
+
+      // maps the file one window at a time, each window ends right after a newline
+      while (position < fileSize) {
+        long length = Math.min(MAX_WINDOW, fileSize - position);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        int end = (int) length;
+        if (position + length < fileSize) {
+          end = lastNewline(buffer, end) + 1;
+          if (end == 0) {
+            throw new IOException("Line is too long to be read");
+          }
+        }
+        if (!parseRange(buffer, 0, end, parsedRuns)) {
+          System.out.println(BAD_LINE);
+          break;
+        }
+        position += end;
+      }
+    }
+    return parsedRuns;
+  }
+
+  /**
+   * This method reads every Run in the passed in file like readRuns, but splits the file into byte ranges that end
+   * on a newline and parses each range on a worker of the passed in pool. Each range is sorted by its worker and the
+   * sorted ranges are then merged, so the returned runs are in the same order a sequential load would sort them in
+   * @param file the path of the CSV file
+   * @param pool the pool that parses the ranges
+   * @return the sorted runs of the file
+   * @throws IOException if the file could not be opened or mapped
+   */
+  public static ParsedRuns readRunsParallel(Path file, ForkJoinPool pool) throws IOException {
+    ArrayList<ParsedRuns> chunks = new ArrayList<>();
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long fileSize = channel.size();
+      long position = 0;
+      int chunkSize = (int) Math.max(MIN_CHUNK,
+          Math.min(MAX_WINDOW, fileSize) / ((long) pool.getParallelism() * CHUNKS_PER_THREAD));
+
+      // maps the file one window at a time, each window ends right after a newline
+      while (position < fileSize) {
+        long length = Math.min(MAX_WINDOW, fileSize - position);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        int end = (int) length;
+        if (position + length < fileSize) {
+          end = lastNewline(buffer, end) + 1;
+          if (end == 0) {
+            throw new IOException("Line is too long to be read");
+          }
+        }
+
+        // splits the window into ranges that end right after a newline and parses each one on the pool
+        ArrayList<ForkJoinTask<ParsedRuns>> tasks = new ArrayList<>();
+        int rangeStart = 0;
+        while (rangeStart < end) {
+          int rangeEnd = end;
+          if ((long) rangeStart + chunkSize < end) {
+            rangeEnd = indexOf(buffer, rangeStart + chunkSize, end, (byte) '\n') + 1;
+            if (rangeEnd == 0) {
+              rangeEnd = end;
+            }
+          }
+          int from = rangeStart;
+          int to = rangeEnd;
+          tasks.add(pool.submit(() -> parseChunk(buffer, from, to)));
+          rangeStart = rangeEnd;
+        }
+        for (int i = 0; i < tasks.size(); ++i) {
+          chunks.add(tasks.get(i).join());
+        }
+        position += end;
+      }
+    }
+    return merge(chunks);
+  }
+
+  /**
+   * This private method parses one byte range of the file into a sorted list.
+   * An error in the range is saved instead of thrown, so the ranges can be checked in the order of the file
+   */
+  private static ParsedRuns parseChunk(ByteBuffer buffer, int start, int end) {
+    ParsedRuns chunk = new ParsedRuns();
+    try {
+      chunk.complete = parseRange(buffer, start, end, chunk.runs);
+    }
+    catch (RuntimeException e) {
+      chunk.error = e;
+      return chunk;
+    }
+    Collections.sort(chunk.runs); // stable sort, so runs on the same day stay in file order
+    return chunk;
+  }
+
+  /**
+   * This private method merges the sorted ranges of the file with a k-way merge. On runs with the same date the run
+   * of the earlier range comes first, which is the same order a stable sort of the whole file gives. Ranges after a
+   * line without the nessasary data are dropped, just like a sequential load stops at that line
+   */
+  private static ParsedRuns merge(List<ParsedRuns> chunks) {
+    ParsedRuns merged = new ParsedRuns();
+    int used = 0;
+    int total = 0;
+    while (used < chunks.size()) {
+      ParsedRuns chunk = chunks.get(used++);
+      if (chunk.error != null) {
+        throw chunk.error;
+      }
+      total += chunk.runs.size();
+      if (!chunk.complete) {
+        System.out.println(BAD_LINE);
+        merged.complete = false;
+        break;
+      }
+    }
+
+    // one cursor per range, ordered by the run they point at and then by the order of the ranges
+    merged.runs = new ArrayList<>(total);
+    PriorityQueue<int[]> cursors = new PriorityQueue<>(Math.max(1, used), (a, b) -> {
+      int compare = chunks.get(a[0]).runs.get(a[1]).compareTo(chunks.get(b[0]).runs.get(b[1]));
+      return compare != 0 ? compare : Integer.compare(a[0], b[0]);
+    });
+    for (int i = 0; i < used; ++i) {
+      if (!chunks.get(i).runs.isEmpty()) {
+        cursors.add(new int[] {i, 0});
+      }
+    }
+    while (!cursors.isEmpty()) {
+      int[] cursor = cursors.poll();
+      List<Run> runs = chunks.get(cursor[0]).runs;
+      merged.runs.add(runs.get(cursor[1]));
+      if (++cursor[1] < runs.size()) {
+        cursors.add(cursor);
+      }
+    }
+    return merged;
+  }
+
+  /**
+   * This method parses every line in the passed in byte range and adds the runs to the passed in list.
+   * The range should start at the start of a line and end right after a newline or at the end of the file
+   * @param buffer the bytes of the file
+   * @param start the index of the first byte to parse (inclusive)
+   * @param end the index of the last byte to parse (exclusive)
+   * @param out the list the parsed runs are added to
+   * @return true if every line was parsed, false if parsing stopped at a line without the nessasary data
+   */
+  static boolean parseRange(ByteBuffer buffer, int start, int end, List<Run> out) {
+    LocalDate today = null; // date of runs without a date, only looked up if needed
+    ByteChars time = new ByteChars(buffer); // the time of the current line, read by Run.parseSeconds
+    int lineStart = start;
+    while (lineStart < end) {
+      // finds the end of the line, a Windows line ending (\r\n) is not part of the line
+      int lineEnd = lineStart;
+      while (lineEnd < end && buffer.get(lineEnd) != '\n') {
+        ++lineEnd;
+      }
+      int next = lineEnd + 1;
+      if (lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r') {
+        --lineEnd;
+      }
+
+      // skips blank lines
+      if (lineEnd == lineStart) {
+        lineStart = next;
+        continue;
+      }
+
+      // finds the commas of the line: Distance, Time, Date
+      int firstComma = indexOf(buffer, lineStart, lineEnd, (byte) ',');
+      int secondComma = firstComma == -1 ? -1 : indexOf(buffer, firstComma + 1, lineEnd, (byte) ',');
+      if (firstComma == -1 || (secondComma != -1 && indexOf(buffer, secondComma + 1, lineEnd, (byte) ',') != -1)) {
+        return false;
+      }
+
+      double distance = parseDistance(buffer, lineStart, firstComma);
+      int timeEnd = secondComma == -1 ? lineEnd : secondComma;
+      int seconds = Run.parseSeconds(time.range(firstComma + 1, timeEnd));
+      LocalDate date;
+      if (secondComma == -1) {
+        if (today == null) {
+          today = LocalDate.now();
+        }
+        date = today;
+      }
+      else {
+        date = parseDate(buffer, secondComma + 1, lineEnd);
+      }
+
+      out.add(new Run(distance, seconds, date));
+      lineStart = next;
+    }
+    return true;
+  }
+
+  /**
+   * This method parses a distance such as 4.13 from the passed in bytes
+   * @param buffer the bytes of the file
+   * @param start the index of the first byte of the distance (inclusive)
+   * @param end the index of the last byte of the distance (exclusive)
+   * @return the distance as a double
+   */
+  static double parseDistance(ByteBuffer buffer, int start, int end) {
+    long mantissa = 0;
+    int digits = 0;
+    int fractionDigits = -1; // -1 until the decimal point is found
+    for (int i = start; i < end; ++i) {
+      byte curr = buffer.get(i);
+      if (curr >= '0' && curr <= '9') {
+        mantissa = mantissa * 10 + (curr - '0');
+        ++digits;
+        if (fractionDigits != -1) {
+          ++fractionDigits;
+        }
+      }
+      else if (curr == '.' && fractionDigits == -1) {
+        fractionDigits = 0;
+      }
+      else {
+        // signs, exponents, etc. are left to Double.parseDouble
+        return parseDistanceSlow(buffer, start, end);
+      }
+      if (digits > 18) {
+        return parseDistanceSlow(buffer, start, end);
+      }
+    }
+    if (digits == 0) {
+      throw new IllegalArgumentException("Invalid distance: " + text(buffer, start, end));
+    }
+    if (fractionDigits <= 0) {
+      return mantissa;
+    }
+    // both numbers are exact doubles, so the division is rounded the same way Double.parseDouble rounds
+    if (mantissa < MAX_EXACT_MANTISSA && fractionDigits < POWERS_OF_TEN.length) {
+      return mantissa / POWERS_OF_TEN[fractionDigits];
+    }
+    return parseDistanceSlow(buffer, start, end);
+  }
+
+  /**
+   * This method parses a date formatted as so: 2024-11-26 from the passed in bytes
+   * @param buffer the bytes of the file
+   * @param start the index of the first byte of the date (inclusive)
+   * @param end the index of the last byte of the date (exclusive)
+   * @return the date
+   */
+  static LocalDate parseDate(ByteBuffer buffer, int start, int end) {
+    if (end - start != 10 || buffer.get(start + 4) != '-' || buffer.get(start + 7) != '-') {
+      // anything that is not yyyy-mm-dd is left to LocalDate.parse
+      return LocalDate.parse(text(buffer, start, end));
+    }
+    int year = parseDigits(buffer, start, start + 4);
+    int month = parseDigits(buffer, start + 5, start + 7);
+    int day = parseDigits(buffer, start + 8, start + 10);
+    if (year < 0 || month < 0 || day < 0) {
+      return LocalDate.parse(text(buffer, start, end));
+    }
+    return LocalDate.of(year, month, day);
+  }
+
+  /**
+   * This private method parses a whole number that only has digits
+   * @return the number, or -1 if there is a character that is not a digit
+   */
+  private static int parseDigits(ByteBuffer buffer, int start, int end) {
+    int toReturn = 0;
+    for (int i = start; i < end; ++i) {
+      byte curr = buffer.get(i);
+      if (curr < '0' || curr > '9') {
+        return -1;
+      }
+      toReturn = toReturn * 10 + (curr - '0');
+    }
+    return toReturn;
+  }
+
+  /**
+   * This private method parses a distance that is not plain digits with Double.parseDouble
+   */
+  private static double parseDistanceSlow(ByteBuffer buffer, int start, int end) {
+    try {
+      return Double.parseDouble(text(buffer, start, end));
+    }
+    catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid distance: " + text(buffer, start, end));
+    }
+  }
+
+  /**
+   * This method finds the index of the passed in byte in the passed in range
+   * @return the index of the byte, or -1 if it was not found
+   */
+  static int indexOf(ByteBuffer buffer, int start, int end, byte toFind) {
+    for (int i = start; i < end; ++i) {
+      if (buffer.get(i) == toFind) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * This method finds the index of the last newline before the passed in index
+   * @return the index of the newline, or -1 if there is none
+   */
+  static int lastNewline(ByteBuffer buffer, int end) {
+    for (int i = end - 1; i >= 0; --i) {
+      if (buffer.get(i) == '\n') {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * This private method makes a String out of the passed in bytes. It is only used for error messages and for
+   * values that are not in the usual format
+   */
+  private static String text(ByteBuffer buffer, int start, int end) {
+    byte[] bytes = new byte[end - start];
+    for (int i = start; i < end; ++i) {
+      bytes[i - start] = buffer.get(i);
+    }
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * This class defines a range of the bytes of a file read as characters, so the times in a file are parsed by
+   * Run.parseSeconds with the same rules as a time that is typed in, without making a String out of each one.
+   * One is made per parsed range and moved from line to line
+   */
+  static class ByteChars implements CharSequence {
+    ByteBuffer buffer;
+    int start = 0;
+    int end = 0;
+
+    ByteChars(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    /**
+     * This method moves this view to the passed in range of bytes
+     * @param start the index of the first byte (inclusive)
+     * @param end the index of the last byte (exclusive)
+     * @return this view
+     */
+    ByteChars range(int start, int end) {
+      this.start = start;
+      this.end = end;
+      return this;
+    }
+
+    @Override
+    public int length() {
+      return this.end - this.start;
+    }
+
+    @Override
+    public char charAt(int index) {
+      return (char) (this.buffer.get(this.start + index) & 0xFF);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+      return this.toString().substring(start, end);
+    }
+
+    @Override
+    public String toString() {
+      return text(this.buffer, this.start, this.end);
+    }
+  }
+
+  /**
+   * This class holds the runs that were parsed from (part of) a file
+   */
+  static class ParsedRuns {
+    List<Run> runs = new ArrayList<>(); // the parsed runs
+    boolean complete = true; // false if parsing stopped at a line without the nessasary data
+    RuntimeException error = null; // the error that stopped parsing, if any
+  }
+}
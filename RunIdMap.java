@@ -0,0 +1,136 @@
+/**
+ * This class maps the ids of runs to the runs, like a HashMap of Long to Run without boxing the ids. The ids and
+ * runs are kept in two arrays with open addressing: an id is stored in the first free slot at or after the slot
+ * its hash points to (linear probing), so a lookup reads a few neighbouring longs. Removing an id moves the ids
+ * after it back into the gap instead of leaving a marker behind, so lookups never slow down after a lot of removes
+ */
+public class RunIdMap {
+
+  static final int INITIAL_CAPACITY = 16; // a power of two
+  static final int MAX_LOAD_PERCENT = 60; // the table doubles once more than this share of slots are used
+  static final long FREE = 0; // run ids start at 1, so 0 marks a free slot
+
+  long[] keys = new long[INITIAL_CAPACITY];
+  Run[] values = new Run[INITIAL_CAPACITY];
+  int size = 0;
+
+  /**
+   * This method gets the run with the passed in id
+   * @param id the id of the run
+   * @return the run, or null if there is no run with that id
+   */
+  Run get(long id) {
+    if (id == FREE) {
+      return null;
+    }
+    int mask = this.keys.length - 1;
+    for (int slot = slot(id, mask); this.keys[slot] != FREE; slot = (slot + 1) & mask) {
+      if (this.keys[slot] == id) {
+        return this.values[slot];
+      }
+    }
+    return null;
+  }
+
+  /**
+   * This method maps the passed in id to the passed in run, replacing the run the id was mapped to if any
+   * @param id the id of the run, not 0
+   * @param run the run
+   * @return the run the id was mapped to before, or null if there was none
+   */
+  Run put(long id, Run run) {
+    if (id == FREE) {
+      throw new IllegalArgumentException("A run id can not be 0");
+    }
+    if ((this.size + 1) * 100L > (long) this.keys.length * MAX_LOAD_PERCENT) {
+      this.resize(this.keys.length * 2);
+    }
+    int mask = this.keys.length - 1;
+    int slot = slot(id, mask);
+    while (this.keys[slot] != FREE) {
+      if (this.keys[slot] == id) {
+        Run old = this.values[slot];
+        this.values[slot] = run;
+        return old;
+      }
+      slot = (slot + 1) & mask;
+    }
+    this.keys[slot] = id;
+    this.values[slot] = run;
+    ++this.size;
+    return null;
+  }
+
+  /**
+   * This method removes the passed in id
+   * @param id the id of the run
+   * @return the run the id was mapped to, or null if there was none
+   */
+  Run remove(long id) {
+    if (id == FREE) {
+      return null;
+    }
+    int mask = this.keys.length - 1;
+    int slot = slot(id, mask);
+    while (this.keys[slot] != id) {
+      if (this.keys[slot] == FREE) {
+        return null;
+      }
+      slot = (slot + 1) & mask;
+    }
+    Run removed = this.values[slot];
+    // moves every later id of the same run of used slots back into the gap if the gap is between its home slot
+    // and where it is now, so every id can still be reached from its home slot
+    int gap = slot;
+    for (int next = (gap + 1) & mask; this.keys[next] != FREE; next = (next + 1) & mask) {
+      int home = slot(this.keys[next], mask);
+      if (((next - home) & mask) >= ((next - gap) & mask)) {
+        this.keys[gap] = this.keys[next];
+        this.values[gap] = this.values[next];
+        gap = next;
+      }
+    }
+    this.keys[gap] = FREE;
+    this.values[gap] = null;
+    --this.size;
+    return removed;
+  }
+
+  /**
+   * This method gets the amount of ids in the map
+   * @return the size field variable
+   */
+  int size() {
+    return this.size;
+  }
+
+  /**
+   * This private method moves every id into a table of the passed in capacity
+   */
+  private void resize(int capacity) {
+    long[] oldKeys = this.keys;
+    Run[] oldValues = this.values;
+    this.keys = new long[capacity];
+    this.values = new Run[capacity];
+    int mask = capacity - 1;
+    for (int i = 0; i < oldKeys.length; ++i) {
+      if (oldKeys[i] != FREE) {
+        int slot = slot(oldKeys[i], mask);
+        while (this.keys[slot] != FREE) {
+          slot = (slot + 1) & mask;
+        }
+        this.keys[slot] = oldKeys[i];
+        this.values[slot] = oldValues[i];
+      }
+    }
+  }
+
+  /**
+   * This private method gets the home slot of an id. Ids are handed out in order, so they are mixed first to
+   * spread neighbouring ids over the table
+   */
+  private static int slot(long id, int mask) {
+    long hash = id * 0x9E3779B97F4A7C15L; // the golden ratio, a multiplicative hash
+    return (int) (hash ^ (hash >>> 32)) & mask;
+  }
+}
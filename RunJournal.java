@@ -0,0 +1,657 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.CRC32;
+
+/**
+ * This class defines an append-only log of every change made to a RunStorage, so the changes are not lost when
+ * the app is closed. Each change is written as one record formatted as such:
+ * length, checksum, sequence number, type of change, data of the change
+ * Runs are named by their index in the sorted collection, which is the same when the log is replayed in order.
+ *
+ * Records are collected in memory and a committer task writes and fsyncs them. Every record that comes in while
+ * the task is writing is written with the next fsync (group commit), so a change only costs encoding a few bytes
+ * and sync can be used to wait until the changes are on disk. The task runs on an executor that can be shared by
+ * many journals, so a journal only holds a thread while it has records to write. Once the log is larger than the
+ * compaction size, the collection is written to a snapshot by a task on the same executor and the log is started
+ * over
+ */
+public class RunJournal implements AutoCloseable {
+
+  // types of change
+  static final byte ADD = 1;
+  static final byte REMOVE = 2;
+  static final byte SET_TITLE = 3;
+  static final byte SET_LOCATION = 4;
+  static final byte SET_DESCRIPTION = 5;
+  static final byte SET_RATING = 6;
+  static final byte SET_TIME = 7;
+
+  static final long DEFAULT_COMPACT_SIZE = 8 << 20; // the log is compacted once it is this many bytes
+  static final int HEADER_SIZE = 8; // length and checksum before every record
+  // the committer of journals that are not given one, its threads stop after a minute without records
+  static final ExecutorService COMMITTERS = Executors.newCachedThreadPool(task -> {
+    Thread thread = new Thread(task, "RunJournal committer");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  RunStorage storage; // the collection whose changes are logged
+  Path snapshotFile; // the snapshot the log is compacted into
+  Path logFile; // the log that records are appended to
+  Path compactingFile; // the previous log while it is being compacted into the snapshot
+  long compactSize;
+
+  // guarded by this
+  ByteArrayOutputStream pending = new ByteArrayOutputStream(); // records that have not been written yet
+  ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(); // the record that is being encoded
+  DataOutputStream record = new DataOutputStream(recordBytes);
+  long nextSequence = 1; // the sequence number of the next record
+  long durableSequence = 0; // every record up to this sequence number is on disk
+  long logSize = 0; // bytes in the log since it was started over
+  boolean writing = false; // true while the committer writes a batch without holding this
+  boolean scheduled = false; // true while a committer task is queued or running
+  boolean compacting = false; // true while the snapshot is being written in the background
+  boolean oldLogKept = false; // true while the file at compactingFile exists
+  boolean closed = false;
+  IOException failure = null; // the error of a write or compaction that stopped the journal, if any
+
+  // written by the committer while writing is true, otherwise only while holding this
+  FileChannel log;
+  ByteArrayOutputStream toWrite = new ByteArrayOutputStream(); // the batch the committer is writing
+  Executor committer; // runs the tasks that write and fsync the records
+
+  /**
+   * Constructor for RunJournal. Use open to make a journal so the log is replayed first
+   */
+  private RunJournal(RunStorage storage, Path snapshotFile, Path logFile, long compactSize, Executor committer) {
+    this.storage = storage;
+    this.snapshotFile = snapshotFile;
+    this.logFile = logFile;
+    this.compactingFile = logFile.resolveSibling(logFile.getFileName() + ".compacting");
+    this.compactSize = compactSize;
+    this.committer = committer;
+  }
+
+  /**
+   * This method loads the snapshot and replays the log into the passed in (empty) collection and then logs every
+   * change made to the collection from now on
+   * @param storage the collection to load and log
+   * @param snapshotFile the path of the snapshot
+   * @param logFile the path of the log
+   * @return the journal of the collection
+   * @throws IOException if the snapshot or the log could not be read
+   */
+  public static RunJournal open(RunStorage storage, Path snapshotFile, Path logFile) throws IOException {
+    return open(storage, snapshotFile, logFile, DEFAULT_COMPACT_SIZE);
+  }
+
+  /**
+   * This method loads the snapshot and replays the log into the passed in (empty) collection and then logs every
+   * change made to the collection from now on
+   * @param storage the collection to load and log
+   * @param snapshotFile the path of the snapshot
+   * @param logFile the path of the log
+   * @param compactSize the size in bytes at which the log is compacted into the snapshot
+   * @return the journal of the collection
+   * @throws IOException if the snapshot or the log could not be read
+   */
+  public static RunJournal open(RunStorage storage, Path snapshotFile, Path logFile, long compactSize)
+      throws IOException {
+    return open(storage, snapshotFile, logFile, compactSize, COMMITTERS);
+  }
+
+  /**
+   * This method loads the snapshot and replays the log into the passed in (empty) collection and then logs every
+   * change made to the collection from now on
+   * @param storage the collection to load and log
+   * @param snapshotFile the path of the snapshot
+   * @param logFile the path of the log
+   * @param compactSize the size in bytes at which the log is compacted into the snapshot
+   * @param committer the executor that writes and fsyncs the records, can be shared by many journals
+   * @return the journal of the collection
+   * @throws IOException if the snapshot or the log could not be read
+   */
+  public static RunJournal open(RunStorage storage, Path snapshotFile, Path logFile, long compactSize,
+      Executor committer) throws IOException {
+    RunJournal journal = new RunJournal(storage, snapshotFile, logFile, compactSize, committer);
+    storage.journal = null; // the replayed changes are already in the log
+
+    long lastSequence = 0;
+    if (Files.exists(snapshotFile)) {
+      RunSnapshotFile.Snapshot snapshot = RunSnapshotFile.readSnapshot(snapshotFile);
+      storage.addSorted(snapshot.runs);
+      lastSequence = snapshot.journalSequence;
+    }
+    // a log that was being compacted when the app stopped is older than the current log
+    boolean interrupted = Files.exists(journal.compactingFile);
+    journal.oldLogKept = interrupted;
+    if (interrupted) {
+      lastSequence = journal.replay(journal.compactingFile, lastSequence)[0];
+    }
+    long validBytes = 0;
+    if (Files.exists(logFile)) {
+      long[] replayed = journal.replay(logFile, lastSequence);
+      lastSequence = replayed[0];
+      validBytes = replayed[1];
+    }
+
+    // opens the log and cuts off a record that was only half written
+    journal.log = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    RunSnapshotFile.syncDirectory(logFile); // a new log has to stay in its directory for its records to last
+    journal.log.truncate(validBytes);
+    journal.log.position(validBytes);
+    journal.logSize = validBytes;
+    journal.nextSequence = lastSequence + 1;
+    journal.durableSequence = lastSequence;
+    storage.journal = journal;
+
+    if (interrupted || validBytes >= compactSize) {
+      journal.checkpoint();
+    }
+    return journal;
+  }
+
+  /**
+   * This method logs that the passed in runs were added, in the order they were added
+   * @param added the added runs
+   */
+  public synchronized void logAdds(List<Run> added) {
+    for (int i = 0; i < added.size(); ++i) {
+      Run currRun = added.get(i);
+      try {
+        this.startRecord(ADD);
+        this.record.writeLong(currRun.runDate.toEpochDay());
+        this.record.writeInt(currRun.timeRan.toSecondOfDay());
+        this.record.writeDouble(currRun.distance);
+        this.record.writeByte(currRun.rating);
+        writeText(this.record, currRun.title);
+        writeText(this.record, currRun.location);
+        writeText(this.record, currRun.description);
+        this.record.writeLong(currRun.id);
+      }
+      catch (IOException e) {
+        throw new UncheckedIOException(e); // can not happen, the record is written to memory
+      }
+      this.endRecord();
+    }
+    this.maybeCompact();
+  }
+
+  /**
+   * This method logs that the run at the passed in index was removed
+   * @param index the index of the run before it was removed
+   */
+  public synchronized void logRemove(int index) {
+    try {
+      this.startRecord(REMOVE);
+      this.record.writeInt(index);
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    this.endRecord();
+    this.maybeCompact();
+  }
+
+  /**
+   * This method logs that the title, location or description of the run at the passed in index was set
+   * @param type SET_TITLE, SET_LOCATION or SET_DESCRIPTION
+   * @param index the index of the run
+   * @param text the new text, can be null
+   */
+  public synchronized void logSetText(byte type, int index, String text) {
+    try {
+      this.startRecord(type);
+      this.record.writeInt(index);
+      writeText(this.record, text);
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    this.endRecord();
+    this.maybeCompact();
+  }
+
+  /**
+   * This method logs that the rating of the run at the passed in index was set
+   * @param index the index of the run
+   * @param rating the new rating
+   */
+  public synchronized void logSetRating(int index, int rating) {
+    try {
+      this.startRecord(SET_RATING);
+      this.record.writeInt(index);
+      this.record.writeByte(rating);
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    this.endRecord();
+    this.maybeCompact();
+  }
+
+  /**
+   * This method logs that the time of the run at the passed in index was set
+   * @param index the index of the run
+   * @param seconds the new time in seconds
+   */
+  public synchronized void logSetTime(int index, int seconds) {
+    try {
+      this.startRecord(SET_TIME);
+      this.record.writeInt(index);
+      this.record.writeInt(seconds);
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    this.endRecord();
+    this.maybeCompact();
+  }
+
+  /**
+   * This method checks that changes can still be logged, RunStorage calls it before it changes anything so a
+   * change that can not be saved is not made in memory either
+   * @throws UncheckedIOException if the log could not be written, the error is the cause
+   * @throws IllegalStateException if the journal is closed
+   */
+  public synchronized void checkWritable() {
+    if (this.failure != null) {
+      throw new UncheckedIOException("Running Log can not save changes anymore", this.failure);
+    }
+    if (this.closed) {
+      throw new IllegalStateException("Journal is closed");
+    }
+  }
+
+  /**
+   * This method waits until every change logged so far is on disk
+   * @throws IOException if the log could not be written
+   */
+  public synchronized void sync() throws IOException {
+    long target = this.nextSequence - 1;
+    while (this.durableSequence < target) {
+      if (this.failure != null) {
+        throw this.failure;
+      }
+      if (this.closed) {
+        throw new IOException("Journal is closed");
+      }
+      try {
+        this.wait();
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while waiting for the journal", e);
+      }
+    }
+  }
+
+  /**
+   * This method writes the whole collection to the snapshot right away and starts the log over. It is used when
+   * the app is closed so the next start only has to load the snapshot
+   * @throws IOException if the snapshot or the log could not be written
+   */
+  public synchronized void checkpoint() throws IOException {
+    this.awaitBackground();
+    this.writePending();
+    long sequence = this.nextSequence - 1;
+    RunSnapshotFile.write(this.snapshotFile, this.storage.runStorage, sequence);
+    // every record is in the snapshot now
+    this.log.truncate(0);
+    this.log.position(0);
+    this.logSize = 0;
+    this.durableSequence = sequence;
+    Files.deleteIfExists(this.compactingFile);
+    this.oldLogKept = false;
+  }
+
+  /**
+   * This method writes a snapshot and closes the log. The checkpoint waits for the committer and writes every
+   * record itself, and no records can be logged after this, so the committer never touches the log again
+   * @throws IOException if the snapshot or the log could not be written
+   */
+  @Override
+  public void close() throws IOException {
+    synchronized (this) {
+      if (this.closed) {
+        return;
+      }
+      this.checkpoint();
+      this.closed = true;
+      this.notifyAll();
+      this.log.close();
+    }
+    if (this.storage.journal == this) {
+      this.storage.journal = null;
+    }
+  }
+
+  /**
+   * This private method starts encoding a record of the passed in type with the next sequence number
+   */
+  private void startRecord(byte type) throws IOException {
+    this.checkWritable(); // records are not piled up in memory once they can not be written anymore
+    this.recordBytes.reset();
+    this.record.writeLong(this.nextSequence++);
+    this.record.writeByte(type);
+  }
+
+  /**
+   * This private method adds the encoded record with its length and checksum to the records waiting to be written
+   */
+  private void endRecord() {
+    byte[] bytes = this.recordBytes.toByteArray();
+    CRC32 checksum = new CRC32();
+    checksum.update(bytes, 0, bytes.length);
+    boolean wasEmpty = this.pending.size() == 0;
+    writeInt(this.pending, bytes.length);
+    writeInt(this.pending, (int) checksum.getValue());
+    this.pending.write(bytes, 0, bytes.length);
+    this.logSize += HEADER_SIZE + bytes.length;
+    if (wasEmpty && !this.scheduled) {
+      // a running task picks up the record with its next batch, otherwise a new task is started
+      this.scheduled = true;
+      try {
+        this.committer.execute(this::commitBatches);
+      }
+      catch (RejectedExecutionException e) {
+        this.scheduled = false;
+        this.failure = new IOException("The committer of the journal was shut down", e);
+        this.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * This private method writes and fsyncs the records waiting to be written. Should be called while holding this
+   * after awaitBackground
+   */
+  private void writePending() throws IOException {
+    if (this.failure != null) {
+      throw this.failure;
+    }
+    if (this.pending.size() > 0) {
+      this.log.write(ByteBuffer.wrap(this.pending.toByteArray()));
+      this.pending.reset();
+    }
+    this.log.force(false);
+  }
+
+  /**
+   * This private method is run by the committer. It writes and fsyncs all the records that came in since the last
+   * batch at once, until there are no records left, then the task ends and gives its thread back to the executor
+   */
+  private void commitBatches() {
+    while (true) {
+      long target;
+      ByteArrayOutputStream batch;
+      synchronized (this) {
+        if (this.pending.size() == 0 || this.failure != null || this.closed) {
+          this.scheduled = false;
+          return;
+        }
+        // swaps the buffers, so new records can be logged while this batch is written
+        batch = this.pending;
+        this.pending = this.toWrite;
+        this.toWrite = batch;
+        target = this.nextSequence - 1;
+        this.writing = true;
+      }
+
+      IOException error = null;
+      try {
+        this.log.write(ByteBuffer.wrap(batch.toByteArray()));
+        this.log.force(false);
+      }
+      catch (IOException e) {
+        error = e;
+      }
+      batch.reset();
+
+      synchronized (this) {
+        this.writing = false;
+        if (error != null) {
+          this.failure = error;
+          this.scheduled = false;
+          this.notifyAll();
+          return;
+        }
+        this.durableSequence = Math.max(this.durableSequence, target);
+        this.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * This private method starts compacting the log in the background once it is larger than the compaction size.
+   * The current log is set aside, a snapshot of the collection is taken and a new log is started, then a task on the
+   * committer executor writes the copy to the snapshot and deletes the old log. The change that was just logged is
+   * already made, so an error is not thrown from here, it is kept in failure and stops the next change. Should be
+   * called while holding this
+   */
+  private void maybeCompact() {
+    if (this.logSize < this.compactSize || this.compacting || this.oldLogKept) {
+      return;
+    }
+    long sequence;
+    try {
+      this.awaitBackground();
+      this.writePending();
+      sequence = this.nextSequence - 1;
+      this.log.close();
+      Files.move(this.logFile, this.compactingFile, StandardCopyOption.ATOMIC_MOVE);
+      this.oldLogKept = true;
+      this.log = FileChannel.open(this.logFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+          StandardOpenOption.TRUNCATE_EXISTING);
+      RunSnapshotFile.syncDirectory(this.logFile);
+    }
+    catch (IOException e) {
+      if (this.failure == null) {
+        this.failure = e;
+      }
+      this.notifyAll();
+      return;
+    }
+    this.durableSequence = sequence;
+    this.logSize = 0;
+    this.compacting = true;
+
+    // the runs can still be edited, so the snapshot file is written from a snapshot of the collection
+    RunStorageSnapshot snapshot = this.storage.snapshot();
+    try {
+      this.committer.execute(() -> this.compact(snapshot, sequence));
+    }
+    catch (RejectedExecutionException e) {
+      // the old log is kept and replayed on the next start
+      snapshot.close();
+      this.compacting = false;
+      if (this.failure == null) {
+        this.failure = new IOException("The committer of the journal was shut down", e);
+      }
+      this.notifyAll();
+    }
+  }
+
+  /**
+   * This private method writes the runs of the passed in snapshot to the snapshot file and deletes the old log. If
+   * that fails the old log is kept and replayed on the next start, and the error is kept in failure so it stops
+   * the next change like any other error of the journal
+   */
+  private void compact(RunStorageSnapshot snapshot, long sequence) {
+    IOException error = null;
+    try {
+      RunSnapshotFile.write(this.snapshotFile, snapshot.getRuns(), sequence);
+      Files.deleteIfExists(this.compactingFile);
+    }
+    catch (IOException e) {
+      error = e;
+    }
+    finally {
+      snapshot.close();
+    }
+    synchronized (this) {
+      this.compacting = false;
+      this.oldLogKept = error != null;
+      if (error != null && this.failure == null) {
+        this.failure = error;
+      }
+      this.notifyAll();
+    }
+  }
+
+  /**
+   * This private method waits until the committer is not writing a batch and no compaction is running. Should be
+   * called while holding this
+   */
+  private void awaitBackground() throws IOException {
+    while (this.writing || this.compacting) {
+      try {
+        this.wait();
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while waiting for the journal", e);
+      }
+    }
+  }
+
+  /**
+   * This private method applies every record in the passed in log after the passed in sequence number to the
+   * collection. Replaying stops at the first record that was only half written or is damaged
+   * @return the sequence number of the last applied record and the amount of valid bytes in the log
+   */
+  private long[] replay(Path file, long lastSequence) throws IOException {
+    long validBytes = 0;
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      while (true) {
+        int length;
+        int expected;
+        byte[] bytes;
+        try {
+          length = in.readInt();
+          expected = in.readInt();
+          if (length < 9) {
+            break;
+          }
+          bytes = in.readNBytes(length);
+        }
+        catch (IOException e) {
+          break; // end of the log
+        }
+        CRC32 checksum = new CRC32();
+        checksum.update(bytes, 0, bytes.length);
+        if (bytes.length < length || (int) checksum.getValue() != expected) {
+          break;
+        }
+        validBytes += HEADER_SIZE + length;
+
+        ByteBuffer data = ByteBuffer.wrap(bytes);
+        long sequence = data.getLong();
+        if (sequence <= lastSequence) {
+          continue; // already in the snapshot
+        }
+        this.apply(data.get(), data);
+        lastSequence = sequence;
+      }
+    }
+    return new long[] {lastSequence, validBytes};
+  }
+
+  /**
+   * This private method applies one record to the collection
+   */
+  private void apply(byte type, ByteBuffer data) {
+    if (type == ADD) {
+      long day = data.getLong();
+      int seconds = data.getInt();
+      double distance = data.getDouble();
+      Run toAdd = Run.of(distance, seconds, day);
+      toAdd.rating = data.get();
+      toAdd.title = readText(data);
+      toAdd.location = readText(data);
+      toAdd.description = readText(data);
+      // logs written before runs had ids end here, those runs get a new id when they are added
+      if (data.remaining() >= Long.BYTES) {
+        toAdd.id = data.getLong();
+        Run.reserveId(toAdd.id);
+      }
+      this.storage.addRun(toAdd);
+      return;
+    }
+    Run toEdit = this.storage.runStorage.get(data.getInt());
+    switch (type) {
+      case REMOVE:
+        this.storage.removeRun(toEdit);
+        break;
+      case SET_TITLE:
+        this.storage.setTitle(toEdit, readText(data));
+        break;
+      case SET_LOCATION:
+        this.storage.setLocation(toEdit, readText(data));
+        break;
+      case SET_DESCRIPTION:
+        this.storage.setDescription(toEdit, readText(data));
+        break;
+      case SET_RATING:
+        this.storage.setRating(toEdit, data.get());
+        break;
+      case SET_TIME:
+        this.storage.setRunSeconds(toEdit, data.getInt());
+        break;
+      default:
+        throw new IllegalStateException("Unknown journal record type: " + type);
+    }
+  }
+
+  /**
+   * This private method writes a String that can be null
+   */
+  private static void writeText(DataOutputStream out, String text) throws IOException {
+    if (text == null) {
+      out.writeInt(-1);
+      return;
+    }
+    byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  /**
+   * This private method reads a String written by writeText
+   */
+  private static String readText(ByteBuffer data) {
+    int length = data.getInt();
+    if (length == -1) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    data.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * This private method writes an int in 4 bytes, high byte first
+   */
+  private static void writeInt(ByteArrayOutputStream out, int value) {
+    out.write(value >>> 24);
+    out.write(value >>> 16);
+    out.write(value >>> 8);
+    out.write(value);
+  }
+}
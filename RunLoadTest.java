@@ -0,0 +1,180 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class is a load test client for RunServer. It sends requests from many threads for a while and prints the
+ * requests per second and the latency percentiles. With no arguments it starts its own server with random runs
+ * on the loopback address first:
+ * java RunLoadTest [threads] [seconds] [url]
+ * Most requests are date range and fastest / longest reads, WRITE_PERCENT of them add a run
+ */
+public class RunLoadTest {
+
+  static final int DEFAULT_THREADS = 16;
+  static final int DEFAULT_SECONDS = 10;
+  static final int WRITE_PERCENT = 5;
+  static final int SERVER_RUNS = 100_000; // runs in the server the load test starts itself
+  static final int MAX_SAMPLES = 1 << 20; // latencies kept per thread
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    int threadCount = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_THREADS;
+    int seconds = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_SECONDS;
+    RunServer server = null;
+    String url;
+    if (args.length > 2) {
+      url = args[2];
+    }
+    else {
+      ConcurrentRunStorage storage = new ConcurrentRunStorage();
+      storage.addAll(RunBenchmark.randomRuns(SERVER_RUNS, new Random(42)));
+      server = new RunServer(storage, 0);
+      server.start();
+      url = "http://127.0.0.1:" + server.getPort();
+    }
+
+    HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+        .connectTimeout(Duration.ofSeconds(5)).build();
+    // a short warmup so the JIT has compiled both sides before the measurement
+    runLoad(client, url, threadCount, 2);
+    Result result = runLoad(client, url, threadCount, seconds);
+
+    System.out.println("threads: " + threadCount + ", seconds: " + seconds);
+    System.out.println("requests: " + result.requests + ", errors: " + result.errors);
+    System.out.println("requests/sec: " + result.requests / seconds);
+    System.out.println("latency ms p50: " + percentile(result.latencies, 0.50) + ", p90: "
+        + percentile(result.latencies, 0.90) + ", p99: " + percentile(result.latencies, 0.99) + ", max: "
+        + percentile(result.latencies, 1.0));
+    if (server != null) {
+      server.stop();
+    }
+  }
+
+  /**
+   * This method sends requests to the server from the passed in amount of threads for the passed in time
+   * @param client the client to send with
+   * @param url the address of the server, like http://127.0.0.1:8080
+   * @param threadCount the amount of threads
+   * @param seconds how long to send requests for
+   * @return the amount of requests and errors and every latency sorted
+   * @throws InterruptedException if the thread was interrupted while waiting for the senders
+   */
+  static Result runLoad(HttpClient client, String url, int threadCount, int seconds) throws InterruptedException {
+    long end = System.nanoTime() + seconds * 1_000_000_000L;
+    AtomicLong errors = new AtomicLong();
+    AtomicLong requests = new AtomicLong();
+    long[][] samples = new long[threadCount][];
+    int[] counts = new int[threadCount];
+    Thread[] threads = new Thread[threadCount];
+    for (int i = 0; i < threadCount; ++i) {
+      int thread = i;
+      threads[i] = new Thread(() -> {
+        Random random = new Random(thread);
+        long[] latencies = new long[1024];
+        int count = 0;
+        long sent = 0;
+        while (System.nanoTime() < end) {
+          HttpRequest request = nextRequest(url, random);
+          long start = System.nanoTime();
+          try {
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() >= 500) {
+              errors.incrementAndGet();
+            }
+          }
+          catch (IOException e) {
+            errors.incrementAndGet();
+          }
+          catch (InterruptedException e) {
+            break;
+          }
+          ++sent;
+          if (count == latencies.length && count < MAX_SAMPLES) {
+            latencies = Arrays.copyOf(latencies, Math.min(count * 2, MAX_SAMPLES));
+          }
+          if (count < latencies.length) {
+            latencies[count++] = System.nanoTime() - start;
+          }
+        }
+        samples[thread] = latencies;
+        counts[thread] = count;
+        requests.addAndGet(sent);
+      });
+      threads[i].start();
+    }
+    int total = 0;
+    for (int i = 0; i < threadCount; ++i) {
+      threads[i].join();
+      total += counts[i];
+    }
+
+    Result result = new Result();
+    result.latencies = new long[total];
+    int copied = 0;
+    for (int i = 0; i < threadCount; ++i) {
+      System.arraycopy(samples[i], 0, result.latencies, copied, counts[i]);
+      copied += counts[i];
+    }
+    Arrays.sort(result.latencies);
+    result.requests = requests.get();
+    result.errors = errors.get();
+    return result;
+  }
+
+  /**
+   * This private method picks the next request to send
+   */
+  private static HttpRequest nextRequest(String url, Random random) {
+    int operation = random.nextInt(100);
+    LocalDate day = LocalDate.of(2000, 1, 1).plusDays(random.nextInt(9000));
+    if (operation < WRITE_PERCENT) {
+      String body = "{\"distance\": " + (1 + random.nextInt(2000) / 100.0) + ", \"time\": \"00:"
+          + (10 + random.nextInt(50)) + ":00\", \"date\": \"" + day + "\"}";
+      return HttpRequest.newBuilder(URI.create(url + "/runs"))
+          .header("Content-Type", "application/json")
+          .POST(HttpRequest.BodyPublishers.ofString(body))
+          .build();
+    }
+    String path;
+    if (operation < 60) {
+      path = "/runs?from=" + day + "&to=" + day.plusDays(7);
+    }
+    else if (operation < 80) {
+      path = "/runs/fastest";
+    }
+    else if (operation < 95) {
+      path = "/runs/longest";
+    }
+    else {
+      path = "/runs/latest?n=7";
+    }
+    return HttpRequest.newBuilder(URI.create(url + path)).GET().build();
+  }
+
+  /**
+   * This private method gets a percentile of sorted latencies in milliseconds
+   */
+  private static String percentile(long[] sorted, double percentile) {
+    if (sorted.length == 0) {
+      return "-";
+    }
+    int index = (int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1);
+    return String.format("%.2f", sorted[Math.max(0, index)] / 1e6);
+  }
+
+  /**
+   * This class holds the outcome of a load test
+   */
+  static class Result {
+    long requests;
+    long errors;
+    long[] latencies; // the latency of every request (up to MAX_SAMPLES per thread) in nanoseconds, sorted
+  }
+}
@@ -0,0 +1,400 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * This class keeps the Running Logs of many athletes. Every athlete has a snapshot and a journal in the log
+ * directory, and their log is only loaded into memory when it is used. Loaded logs are kept in least recently used
+ * order, and once their estimated size is over the memory budget the logs that were used longest ago are saved
+ * and dropped. A log is used through a Lease, and a log that is leased is never dropped. If many threads ask for a
+ * log that is not loaded at the same time, only the first one loads it and the others wait for that load
+ */
+public class RunLogManager implements AutoCloseable {
+
+  static final long BYTES_PER_LOG = 16 << 10; // estimated memory of a log and its journal besides its runs
+  // threads that write the journals of every log, a journal only holds one while it has records to write
+  static final int COMMITTER_THREADS = Math.max(4, Runtime.getRuntime().availableProcessors());
+  static final Pattern ATHLETE_ID = Pattern.compile("[A-Za-z0-9_-]{1,64}"); // ids are used as file names
+
+  Path directory; // where the snapshot and journal of every athlete are saved
+  long memoryBudget; // the most bytes the loaded logs should take up
+  long usedBytes = 0; // estimated bytes of every loaded log
+  // every log that is loaded or being loaded in least recently used order, guarded by this
+  LinkedHashMap<String, CompletableFuture<AthleteLog>> logs = new LinkedHashMap<>(16, 0.75f, true);
+  // logs that are being saved after they were dropped, loading them again waits for the save, guarded by this
+  Map<String, CompletableFuture<Void>> closing = new LinkedHashMap<>();
+  boolean closed = false;
+  ExecutorService committers; // shared by the journals of every loaded log
+
+  // metrics
+  AtomicLong hits = new AtomicLong();
+  AtomicLong misses = new AtomicLong();
+  AtomicLong loads = new AtomicLong();
+  AtomicLong failedLoads = new AtomicLong();
+  AtomicLong loadNanos = new AtomicLong();
+  AtomicLong maxLoadNanos = new AtomicLong();
+  AtomicLong evictions = new AtomicLong();
+  AtomicLong failedSaves = new AtomicLong();
+
+  /**
+   * Constructor for a manager of the logs saved in the passed in directory
+   * @param directory where the logs are saved, made if it does not exist
+   * @param memoryBudget the most bytes the loaded logs should take up, logs that are leased can go over it
+   * @throws IOException if the directory could not be made
+   */
+  RunLogManager(Path directory, long memoryBudget) throws IOException {
+    if (memoryBudget <= 0) {
+      throw new IllegalArgumentException("Memory budget must be positive");
+    }
+    this.directory = directory;
+    this.memoryBudget = memoryBudget;
+    Files.createDirectories(directory);
+    this.committers = Executors.newFixedThreadPool(COMMITTER_THREADS, task -> {
+      Thread thread = new Thread(task, "RunLogManager committer");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * This method gets the log of the passed in athlete, loading it first if it is not in memory. The log stays
+   * in memory until the lease is closed
+   * @param athleteId the id of the athlete, letters, digits, '_' and '-' only
+   * @return a lease on the log of the athlete, which should be closed once the log is not used anymore
+   * @throws IOException if the log could not be loaded
+   */
+  public Lease acquire(String athleteId) throws IOException {
+    if (athleteId == null || !ATHLETE_ID.matcher(athleteId).matches()) {
+      throw new IllegalArgumentException("Invalid athlete id: " + athleteId);
+    }
+    while (true) {
+      CompletableFuture<AthleteLog> future;
+      CompletableFuture<Void> saving;
+      boolean loader = false;
+      synchronized (this) {
+        if (this.closed) {
+          throw new IllegalStateException("The log manager is closed");
+        }
+        future = this.logs.get(athleteId); // also moves the log to the most recently used end
+        if (future == null) {
+          // this thread loads the log, every other thread asking for it waits for the same future
+          future = new CompletableFuture<>();
+          this.logs.put(athleteId, future);
+          loader = true;
+          this.misses.incrementAndGet();
+        }
+        else {
+          this.hits.incrementAndGet();
+        }
+        saving = this.closing.get(athleteId);
+      }
+
+      if (loader) {
+        AthleteLog log = this.load(athleteId, future, saving);
+        this.evict();
+        return new Lease(log);
+      }
+      AthleteLog log;
+      try {
+        log = future.join();
+      }
+      catch (CompletionException e) {
+        if (e.getCause() instanceof IOException) {
+          throw new IOException("Log of " + athleteId + " could not be loaded", e.getCause());
+        }
+        throw e;
+      }
+      synchronized (this) {
+        if (this.logs.get(athleteId) == future) {
+          ++log.leases;
+          return new Lease(log);
+        }
+      }
+      // the log was dropped again before this thread could lease it, so it is loaded again
+    }
+  }
+
+  /**
+   * This method gets the metrics of this manager
+   * @return the hits, misses, loads, evictions and failed saves so far
+   */
+  public Metrics getMetrics() {
+    Metrics metrics = new Metrics();
+    metrics.hits = this.hits.get();
+    metrics.misses = this.misses.get();
+    metrics.loads = this.loads.get();
+    metrics.failedLoads = this.failedLoads.get();
+    metrics.evictions = this.evictions.get();
+    metrics.failedSaves = this.failedSaves.get();
+    metrics.totalLoadNanos = this.loadNanos.get();
+    metrics.maxLoadNanos = this.maxLoadNanos.get();
+    synchronized (this) {
+      metrics.loadedLogs = this.logs.size();
+      metrics.usedBytes = this.usedBytes;
+    }
+    return metrics;
+  }
+
+  /**
+   * This method saves and drops every loaded log. Leases that are still open should not be used anymore
+   * @throws IOException if a log could not be saved
+   */
+  @Override
+  public void close() throws IOException {
+    ArrayList<CompletableFuture<AthleteLog>> toClose;
+    synchronized (this) {
+      if (this.closed) {
+        return;
+      }
+      this.closed = true;
+      toClose = new ArrayList<>(this.logs.values());
+      this.logs.clear();
+      this.usedBytes = 0;
+    }
+    IOException failure = null;
+    for (int i = 0; i < toClose.size(); ++i) {
+      try {
+        AthleteLog log = toClose.get(i).join();
+        log.concurrent.closeJournal();
+      }
+      catch (CompletionException e) {
+        continue; // a log that could not be loaded has nothing to save
+      }
+      catch (IOException e) {
+        this.failedSaves.incrementAndGet();
+        failure = e;
+      }
+    }
+    ArrayList<CompletableFuture<Void>> saves;
+    synchronized (this) {
+      saves = new ArrayList<>(this.closing.values());
+    }
+    for (int i = 0; i < saves.size(); ++i) {
+      saves.get(i).join();
+    }
+    this.committers.shutdown(); // every journal is closed, so nothing is left to write
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  /**
+   * This private method loads the log of an athlete from its snapshot and journal and completes the passed in
+   * future with it, after a save of the same log that is still running is done. The loaded log is leased once for
+   * the thread that loaded it
+   */
+  private AthleteLog load(String athleteId, CompletableFuture<AthleteLog> future, CompletableFuture<Void> saving)
+      throws IOException {
+    if (saving != null) {
+      saving.join();
+    }
+    long start = System.nanoTime();
+    try {
+      RunStorage storage = new RunStorage();
+      RunJournal journal = RunJournal.open(storage, this.directory.resolve(athleteId + ".snapshot"),
+          this.directory.resolve(athleteId + ".journal"), RunJournal.DEFAULT_COMPACT_SIZE, this.committers);
+      AthleteLog log = new AthleteLog(athleteId, storage, journal);
+      long nanos = System.nanoTime() - start;
+      this.loads.incrementAndGet();
+      this.loadNanos.addAndGet(nanos);
+      this.maxLoadNanos.accumulateAndGet(nanos, Math::max);
+      synchronized (this) {
+        log.bytes = log.estimateBytes();
+        this.usedBytes += log.bytes;
+        log.leases = 1;
+      }
+      future.complete(log);
+      return log;
+    }
+    catch (IOException | RuntimeException e) {
+      this.failedLoads.incrementAndGet();
+      synchronized (this) {
+        this.logs.remove(athleteId, future); // the next acquire tries again
+      }
+      future.completeExceptionally(e);
+      throw e;
+    }
+  }
+
+  /**
+   * This private method is called when a lease is closed, it updates the size of the log since runs could have
+   * been added and drops logs if the memory budget is used up
+   */
+  private void release(AthleteLog log) {
+    synchronized (this) {
+      --log.leases;
+      long bytes = log.estimateBytes();
+      if (this.logs.containsKey(log.athleteId)) {
+        this.usedBytes += bytes - log.bytes;
+      }
+      log.bytes = bytes;
+    }
+    this.evict();
+  }
+
+  /**
+   * This private method drops the least recently used logs that are not leased until the loaded logs fit in the
+   * memory budget. Each dropped log is saved to its snapshot before it can be loaded again
+   */
+  private void evict() {
+    ArrayList<AthleteLog> evicted = new ArrayList<>();
+    synchronized (this) {
+      Iterator<Map.Entry<String, CompletableFuture<AthleteLog>>> oldest = this.logs.entrySet().iterator();
+      while (this.usedBytes > this.memoryBudget && oldest.hasNext()) {
+        CompletableFuture<AthleteLog> future = oldest.next().getValue();
+        AthleteLog log = future.getNow(null);
+        if (log == null || log.leases > 0) {
+          continue; // still loading or in use
+        }
+        oldest.remove();
+        this.usedBytes -= log.bytes;
+        log.saved = new CompletableFuture<>();
+        this.closing.put(log.athleteId, log.saved);
+        evicted.add(log);
+      }
+    }
+    for (int i = 0; i < evicted.size(); ++i) {
+      AthleteLog log = evicted.get(i);
+      try {
+        log.concurrent.closeJournal(); // writes the whole log to its snapshot
+      }
+      catch (IOException e) {
+        // every change is already in the journal, which is replayed when the log is loaded again
+        this.failedSaves.incrementAndGet();
+      }
+      finally {
+        this.evictions.incrementAndGet();
+        synchronized (this) {
+          this.closing.remove(log.athleteId, log.saved);
+        }
+        log.saved.complete(null);
+      }
+    }
+  }
+
+  /**
+   * This class holds a loaded log
+   */
+  static class AthleteLog {
+    String athleteId;
+    RunStorage storage;
+    ConcurrentRunStorage concurrent; // the storage shared by every lease
+    RunJournal journal;
+    long bytes = 0; // estimated memory of the log the last time it was measured
+    int leases = 0; // open leases, guarded by the manager
+    CompletableFuture<Void> saved = null; // completed once the log is saved after it was dropped
+
+    AthleteLog(String athleteId, RunStorage storage, RunJournal journal) {
+      this.athleteId = athleteId;
+      this.storage = storage;
+      this.concurrent = new ConcurrentRunStorage(storage);
+      this.journal = journal;
+    }
+
+    /**
+     * estimates the memory the log takes up, from its runs and the real length of the arrays of its storage
+     */
+    long estimateBytes() {
+      return BYTES_PER_LOG + this.concurrent.getMemoryBytes();
+    }
+  }
+
+  /**
+   * This class defines the use of a loaded log, the log is not dropped until the lease is closed
+   */
+  public class Lease implements AutoCloseable {
+    AthleteLog log;
+    boolean released = false;
+
+    Lease(AthleteLog log) {
+      this.log = log;
+    }
+
+    /**
+     * returns the log of the athlete, every change to it is saved to the journal of the athlete
+     * @return the log, which can be used from many threads
+     */
+    public ConcurrentRunStorage getLog() {
+      if (this.released) {
+        throw new IllegalStateException("The lease is closed");
+      }
+      return this.log.concurrent;
+    }
+
+    /**
+     * waits until every change made to the log so far is on disk
+     * @throws IOException if the journal could not be written
+     */
+    public void sync() throws IOException {
+      this.log.journal.sync();
+    }
+
+    /**
+     * gives the log back to the manager, it can be dropped from memory after this
+     */
+    @Override
+    public void close() {
+      if (!this.released) {
+        this.released = true;
+        RunLogManager.this.release(this.log);
+      }
+    }
+  }
+
+  /**
+   * This class holds the metrics of a RunLogManager at one point in time
+   */
+  public static class Metrics {
+    long hits; // acquires of a log that was loaded or being loaded
+    long misses; // acquires that had to load the log
+    long loads; // logs that were loaded
+    long failedLoads;
+    long evictions; // logs that were dropped to stay in the memory budget
+    long failedSaves; // dropped logs whose snapshot could not be written, their journal still has every change
+    long totalLoadNanos;
+    long maxLoadNanos;
+    int loadedLogs;
+    long usedBytes;
+
+    /**
+     * returns the share of acquires that found the log in memory
+     * @return the hit rate from 0 to 1, or 0 if there were no acquires
+     */
+    public double getHitRate() {
+      long total = this.hits + this.misses;
+      return total == 0 ? 0 : (double) this.hits / total;
+    }
+
+    /**
+     * returns the average time a load took
+     * @return the average load time in milliseconds, or 0 if nothing was loaded
+     */
+    public double getAverageLoadMillis() {
+      return this.loads == 0 ? 0 : this.totalLoadNanos / 1e6 / this.loads;
+    }
+
+    /**
+     * This method makes a string containing every metric
+     * @return a string that represents these metrics
+     */
+    @Override
+    public String toString() {
+      return "hits: " + this.hits + ", misses: " + this.misses + ", hit rate: "
+          + String.format("%.3f", this.getHitRate()) + ", loads: " + this.loads + ", failed loads: "
+          + this.failedLoads + ", average load: " + String.format("%.2f", this.getAverageLoadMillis())
+          + " ms, max load: " + String.format("%.2f", this.maxLoadNanos / 1e6) + " ms, evictions: "
+          + this.evictions + ", failed saves: " + this.failedSaves + ", loaded logs: " + this.loadedLogs
+          + ", used bytes: " + this.usedBytes;
+    }
+  }
+}
@@ -0,0 +1,333 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * This class measures how often the main operations of RunStorage run and how long they take, and shows the
+ * results over JMX as the platform MBean RunLog:type=RunMetrics. Every operation has a latency histogram with
+ * log-linear buckets in an AtomicLongArray, so recording a latency never locks or allocates. Metrics are on
+ * unless the app is started with -Drunlog.metrics=false, and can be turned on or off at any time over JMX.
+ * While they are off an operation only reads one flag. An operation is measured like this:
+ * long start = RunMetrics.start();
+ * ...
+ * RunMetrics.ADD_RUN.record(start);
+ */
+public class RunMetrics implements RunMetricsMXBean {
+
+  static final String OBJECT_NAME = "RunLog:type=RunMetrics";
+
+  // read by every measured operation, a plain read on most hardware
+  static volatile boolean enabled = !"false".equalsIgnoreCase(System.getProperty("runlog.metrics"));
+
+  static final LatencyHistogram ADD_RUN = new LatencyHistogram("addRun");
+  static final LatencyHistogram ADD_ALL = new LatencyHistogram("addAll");
+  static final LatencyHistogram REMOVE_RUN = new LatencyHistogram("removeRun");
+  static final LatencyHistogram GET_RUN = new LatencyHistogram("getRun");
+  static final LatencyHistogram EDIT = new LatencyHistogram("edit"); // the setters of RunStorage
+  // keeping the fastest and longest heaps and the personal records up to date after a remove or a time change,
+  // which used to be a rescan of every run
+  static final LatencyHistogram RECORDS = new LatencyHistogram("records");
+  static final LatencyHistogram READ_FILE = new LatencyHistogram("readFile");
+  static final LatencyHistogram[] OPERATIONS = {ADD_RUN, ADD_ALL, REMOVE_RUN, GET_RUN, EDIT, RECORDS, READ_FILE};
+
+  static final AtomicLong RUNS_INGESTED = new AtomicLong();
+  static final AtomicLong LINES_READ = new AtomicLong();
+  static final AtomicLong READ_NANOS = new AtomicLong();
+
+  static final RunMetrics INSTANCE = new RunMetrics();
+
+  static {
+    try {
+      ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+    }
+    catch (JMException | SecurityException e) {
+      // the metrics are still recorded and can be read through INSTANCE
+    }
+  }
+
+  /**
+   * This method starts timing an operation
+   * @return the current time in nanoseconds, or 0 if metrics are off
+   */
+  static long start() {
+    return enabled ? System.nanoTime() : 0;
+  }
+
+  /**
+   * This method records that runs were added
+   * @param amount the amount of runs
+   */
+  static void ingested(int amount) {
+    if (enabled) {
+      RUNS_INGESTED.addAndGet(amount);
+    }
+  }
+
+  /**
+   * This method records a file read by readFile that was started at the passed in time
+   * @param start the time returned by start
+   * @param lines the amount of lines in the file
+   */
+  static void fileRead(long start, int lines) {
+    if (start != 0) {
+      long nanos = System.nanoTime() - start;
+      READ_FILE.recordNanos(nanos);
+      LINES_READ.addAndGet(lines);
+      READ_NANOS.addAndGet(nanos);
+    }
+  }
+
+  @Override
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  @Override
+  public void setEnabled(boolean enabled) {
+    RunMetrics.enabled = enabled;
+  }
+
+  @Override
+  public OperationStats[] getOperations() {
+    OperationStats[] stats = new OperationStats[OPERATIONS.length];
+    for (int i = 0; i < OPERATIONS.length; ++i) {
+      stats[i] = OPERATIONS[i].getStats();
+    }
+    return stats;
+  }
+
+  @Override
+  public long getRunsIngested() {
+    return RUNS_INGESTED.get();
+  }
+
+  @Override
+  public long getLinesRead() {
+    return LINES_READ.get();
+  }
+
+  @Override
+  public double getLinesPerSecond() {
+    long nanos = READ_NANOS.get();
+    return nanos == 0 ? 0 : LINES_READ.get() * 1e9 / nanos;
+  }
+
+  @Override
+  public void reset() {
+    for (LatencyHistogram histogram : OPERATIONS) {
+      histogram.reset();
+    }
+    RUNS_INGESTED.set(0);
+    LINES_READ.set(0);
+    READ_NANOS.set(0);
+  }
+
+  /**
+   * This method writes the stats of every operation that ran, one per line
+   * @return the stats as text
+   */
+  @Override
+  public String toString() {
+    StringBuilder text = new StringBuilder();
+    for (OperationStats stats : this.getOperations()) {
+      if (stats.getCount() > 0) {
+        text.append(stats).append('\n');
+      }
+    }
+    text.append("runs ingested: ").append(this.getRunsIngested()).append(", lines read: ")
+        .append(this.getLinesRead()).append(", lines/sec: ").append(Math.round(this.getLinesPerSecond()));
+    return text.toString();
+  }
+
+  /**
+   * This class counts latencies in buckets that grow with the latency: below 2^SUB_BUCKET_BITS nanoseconds every
+   * value has its own bucket, above that every power of two is split into 2^SUB_BUCKET_BITS equal buckets, so a
+   * percentile is off by at most 1 / 2^SUB_BUCKET_BITS of itself. Every count is updated with one atomic add
+   */
+  static class LatencyHistogram {
+
+    static final int SUB_BUCKET_BITS = 3;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int BUCKETS = (63 - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS; // enough for every positive long
+
+    String name;
+    AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    AtomicLong count = new AtomicLong();
+    AtomicLong totalNanos = new AtomicLong();
+    AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Constructor for an empty histogram
+     * @param name the name of the operation it measures
+     */
+    LatencyHistogram(String name) {
+      this.name = name;
+    }
+
+    /**
+     * This method records an operation that was started at the passed in time
+     * @param start the time returned by RunMetrics.start, nothing is recorded if it is 0
+     */
+    void record(long start) {
+      if (start != 0) {
+        this.recordNanos(System.nanoTime() - start);
+      }
+    }
+
+    /**
+     * This method records an operation that took the passed in amount of nanoseconds
+     * @param nanos the latency of the operation
+     */
+    void recordNanos(long nanos) {
+      if (nanos < 0) {
+        nanos = 0; // nanoTime is not always monotonic across cores
+      }
+      this.counts.incrementAndGet(bucketOf(nanos));
+      this.count.incrementAndGet();
+      this.totalNanos.addAndGet(nanos);
+      long max = this.maxNanos.get();
+      while (nanos > max && !this.maxNanos.compareAndSet(max, nanos)) {
+        max = this.maxNanos.get();
+      }
+    }
+
+    /**
+     * This method gets the latency that the passed in share of operations were at or under
+     * @param percentile the share of operations, from 0 to 1
+     * @return the highest latency in the bucket of that percentile in nanoseconds, 0 if nothing was recorded
+     */
+    long getPercentile(double percentile) {
+      long total = 0;
+      long[] snapshot = new long[BUCKETS];
+      for (int i = 0; i < BUCKETS; ++i) {
+        snapshot[i] = this.counts.get(i);
+        total += snapshot[i];
+      }
+      long target = Math.max(1, (long) Math.ceil(percentile * total));
+      long seen = 0;
+      for (int i = 0; i < BUCKETS; ++i) {
+        seen += snapshot[i];
+        if (seen >= target) {
+          long highest = i + 1 < BUCKETS ? lowestOf(i + 1) - 1 : Long.MAX_VALUE;
+          return Math.min(highest, this.maxNanos.get());
+        }
+      }
+      return 0;
+    }
+
+    /**
+     * This method gets the count, average and percentiles of this histogram
+     * @return the stats of the operation
+     */
+    OperationStats getStats() {
+      long operations = this.count.get();
+      return new OperationStats(this.name, operations,
+          operations == 0 ? 0 : this.totalNanos.get() / operations, this.getPercentile(0.50),
+          this.getPercentile(0.99), this.getPercentile(0.999), this.maxNanos.get());
+    }
+
+    /**
+     * This method clears every count
+     */
+    void reset() {
+      for (int i = 0; i < BUCKETS; ++i) {
+        this.counts.set(i, 0);
+      }
+      this.count.set(0);
+      this.totalNanos.set(0);
+      this.maxNanos.set(0);
+    }
+
+    /**
+     * This method gets the bucket of the passed in latency
+     * @param nanos a latency that is not negative
+     * @return the index of its bucket
+     */
+    static int bucketOf(long nanos) {
+      if (nanos < SUB_BUCKETS) {
+        return (int) nanos;
+      }
+      int exponent = 63 - Long.numberOfLeadingZeros(nanos); // at least SUB_BUCKET_BITS
+      int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+      return ((exponent - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) + subBucket;
+    }
+
+    /**
+     * This method gets the lowest latency that goes in the passed in bucket
+     * @param bucket the index of a bucket
+     * @return the lowest latency of the bucket in nanoseconds
+     */
+    static long lowestOf(int bucket) {
+      if (bucket < SUB_BUCKETS) {
+        return bucket;
+      }
+      int exponent = (bucket >> SUB_BUCKET_BITS) + SUB_BUCKET_BITS - 1;
+      long subBucket = bucket & (SUB_BUCKETS - 1);
+      return (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+    }
+  }
+
+  /**
+   * This class holds the stats of one operation at one point in time, JMX shows each one as a row of values
+   */
+  public static class OperationStats {
+
+    String name;
+    long count;
+    long meanNanos;
+    long p50Nanos;
+    long p99Nanos;
+    long p999Nanos;
+    long maxNanos;
+
+    /**
+     * Constructor for the stats of an operation
+     */
+    OperationStats(String name, long count, long meanNanos, long p50Nanos, long p99Nanos, long p999Nanos,
+        long maxNanos) {
+      this.name = name;
+      this.count = count;
+      this.meanNanos = meanNanos;
+      this.p50Nanos = p50Nanos;
+      this.p99Nanos = p99Nanos;
+      this.p999Nanos = p999Nanos;
+      this.maxNanos = maxNanos;
+    }
+
+    public String getName() {
+      return this.name;
+    }
+
+    public long getCount() {
+      return this.count;
+    }
+
+    public long getMeanNanos() {
+      return this.meanNanos;
+    }
+
+    public long getP50Nanos() {
+      return this.p50Nanos;
+    }
+
+    public long getP99Nanos() {
+      return this.p99Nanos;
+    }
+
+    public long getP999Nanos() {
+      return this.p999Nanos;
+    }
+
+    public long getMaxNanos() {
+      return this.maxNanos;
+    }
+
+    @Override
+    public String toString() {
+      return this.name + ": count " + this.count + ", mean " + this.meanNanos + " ns, p50 " + this.p50Nanos
+          + " ns, p99 " + this.p99Nanos + " ns, p999 " + this.p999Nanos + " ns, max " + this.maxNanos + " ns";
+    }
+  }
+}
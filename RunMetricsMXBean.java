@@ -0,0 +1,46 @@
+/**
+ * This interface is what RunMetrics shows over JMX (in jconsole or VisualVM under RunLog:type=RunMetrics)
+ */
+public interface RunMetricsMXBean {
+
+  /**
+   * This method tells if operations are being measured
+   * @return true if metrics are recorded
+   */
+  boolean isEnabled();
+
+  /**
+   * This method turns measuring operations on or off, when off an operation only reads one flag
+   * @param enabled true to record metrics
+   */
+  void setEnabled(boolean enabled);
+
+  /**
+   * This method gets the count and latency percentiles of every measured operation
+   * @return the stats of every operation
+   */
+  RunMetrics.OperationStats[] getOperations();
+
+  /**
+   * This method gets the amount of runs added to any RunStorage, one at a time or in batches
+   * @return the amount of runs added
+   */
+  long getRunsIngested();
+
+  /**
+   * This method gets the amount of lines read from CSV files by readFile
+   * @return the amount of lines read
+   */
+  long getLinesRead();
+
+  /**
+   * This method gets how many lines readFile reads per second, over every file read so far
+   * @return the lines read per second, 0 if no file was read
+   */
+  double getLinesPerSecond();
+
+  /**
+   * This method clears every count and histogram
+   */
+  void reset();
+}
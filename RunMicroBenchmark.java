@@ -0,0 +1,438 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * This class measures the hot paths of RunStorage and Run one operation at a time, the way a JMH benchmark would,
+ * for logs of different sizes and date distributions. Each benchmark warms up before it is measured, is measured
+ * over a few timed iterations and reports the average time of one operation, the error (the standard deviation
+ * of the iterations) and the bytes allocated by one operation:
+ * java RunMicroBenchmark [benchmarks] [sizes] [distributions]
+ * Each argument is a comma separated list, "all" runs everything. For example:
+ * java -Xmx8g RunMicroBenchmark getRun,addRun 1000,10000000 random,many-per-day
+ * The same benchmarks also run under JMH in the benchmarks module, see benchmarks/pom.xml
+ */
+public class RunMicroBenchmark {
+
+  static final int WARMUP_ITERATIONS = 3;
+  static final int MEASURED_ITERATIONS = 5;
+  static final long ITERATION_NANOS = 200_000_000L; // how long each iteration runs for
+  static final int INPUTS = 4096; // the amount of inputs each benchmark cycles through, a power of two
+  static final int MAX_DAYS = 1 << 20; // the most days a log is spread over
+  static final int RUNS_PER_DAY = 100; // runs on every date of the many-per-day distribution
+  static final int MAX_RENDER_SIZE = 1_000_000; // larger logs are not turned into one String
+
+  static final String[] LOG_BENCHMARKS = {"addRun", "readFile", "getRun", "findRun", "getLatest7", "toString"};
+  static final String[] RUN_BENCHMARKS = {"comparePace", "newRunWithDate", "newRun", "newRunParsed", "newRunOf",
+      "parseSeconds"};
+  static final int[] DEFAULT_SIZES = {1_000, 100_000, 1_000_000};
+
+  static Object sink; // every result is stored here so the JIT can not skip making it
+
+  // the inputs of the Run constructor benchmarks, in every format the constructors take
+  static final Double[] DISTANCES = new Double[INPUTS];
+  static final String[] TIMES = new String[INPUTS];
+  static final String[] DATES = new String[INPUTS];
+  static final int[] SECONDS = new int[INPUTS];
+  static final LocalDate[] LOCAL_DATES = new LocalDate[INPUTS];
+  static final long[] EPOCH_DAYS = new long[INPUTS]; // sorted, the way bulk importers read them
+
+  static {
+    Random random = new Random(7);
+    for (int i = 0; i < INPUTS; ++i) {
+      DISTANCES[i] = 1 + random.nextInt(2000) / 100.0;
+      SECONDS[i] = 5 * 60 + random.nextInt(3 * 60 * 60);
+      TIMES[i] = two(SECONDS[i] / 3600) + ":" + two(SECONDS[i] / 60 % 60) + ":" + two(SECONDS[i] % 60);
+      LOCAL_DATES[i] = LocalDate.of(2000, 1, 1).plusDays(random.nextInt(9000));
+      DATES[i] = LOCAL_DATES[i].toString();
+      EPOCH_DAYS[i] = LOCAL_DATES[i].toEpochDay();
+    }
+    Arrays.sort(EPOCH_DAYS);
+  }
+
+  /**
+   * The order runs are entered in and how their dates are spread out
+   */
+  enum Distribution {
+    SORTED, // one run per date, oldest first
+    REVERSED, // one run per date, newest first
+    RANDOM, // one run per date, in random order
+    MANY_PER_DAY; // RUNS_PER_DAY runs on every date, in random order
+
+    /**
+     * This method gets the distribution for a command line name like many-per-day
+     */
+    static Distribution of(String name) {
+      return valueOf(name.toUpperCase().replace('-', '_'));
+    }
+  }
+
+  /**
+   * An operation that is timed, i is a counter that picks the input of the operation
+   */
+  interface Operation {
+    Object run(int i) throws IOException;
+  }
+
+  public static void main(String[] args) throws IOException {
+    List<String> benchmarks = args.length > 0 && !args[0].equals("all")
+        ? Arrays.asList(args[0].split(",")) : allBenchmarks();
+    int[] sizes = args.length > 1 && !args[1].equals("all")
+        ? Arrays.stream(args[1].split(",")).mapToInt(Integer::parseInt).toArray() : DEFAULT_SIZES;
+    List<Distribution> distributions = new ArrayList<>();
+    if (args.length > 2 && !args[2].equals("all")) {
+      for (String name : args[2].split(",")) {
+        distributions.add(Distribution.of(name));
+      }
+    }
+    else {
+      distributions.addAll(Arrays.asList(Distribution.values()));
+    }
+
+    System.out.println("benchmark, size, distribution, ns/op, error (ns/op), bytes/op, MB/s allocated");
+    // the benchmarks that do not depend on the log
+    for (String name : RUN_BENCHMARKS) {
+      if (benchmarks.contains(name)) {
+        run(name, 0, null, runOperation(name));
+      }
+    }
+
+    for (int size : sizes) {
+      for (Distribution distribution : distributions) {
+        runLog(benchmarks, size, distribution);
+      }
+    }
+  }
+
+  /**
+   * This method runs the selected benchmarks that work on a log of the passed in size and distribution
+   * @param benchmarks the names of the selected benchmarks
+   * @param size the amount of runs in the log
+   * @param distribution how the dates of the runs are spread out
+   * @throws IOException if the CSV file of the log could not be written or read
+   */
+  static void runLog(List<String> benchmarks, int size, Distribution distribution) throws IOException {
+    Log log = new Log(size, distribution);
+    try {
+      for (String name : LOG_BENCHMARKS) {
+        if (!benchmarks.contains(name)) {
+          continue;
+        }
+        if (name.equals("toString") && size > MAX_RENDER_SIZE) {
+          System.out.println("toString, " + size + ", " + distribution + ", skipped (larger than " + MAX_RENDER_SIZE
+              + " runs)");
+          continue;
+        }
+        String label = name.equals("addRun") ? "addRun+removeRun" : name.equals("findRun") ? "findRun (setRating)"
+            : name;
+        run(label, size, distribution, log.operation(name));
+      }
+    }
+    finally {
+      log.close();
+    }
+  }
+
+  /**
+   * This method gets a benchmark that does not depend on a log
+   * @param name one of RUN_BENCHMARKS
+   * @return the operation of the benchmark
+   */
+  static Operation runOperation(String name) {
+    switch (name) {
+      case "comparePace":
+        return comparePace();
+      case "newRunWithDate":
+        return i -> new Run(DISTANCES[i & (INPUTS - 1)], TIMES[i & (INPUTS - 1)], DATES[i & (INPUTS - 1)]);
+      case "newRun":
+        return i -> new Run(DISTANCES[i & (INPUTS - 1)], TIMES[i & (INPUTS - 1)]);
+      case "newRunParsed":
+        return i -> new Run(DISTANCES[i & (INPUTS - 1)].doubleValue(), SECONDS[i & (INPUTS - 1)],
+            LOCAL_DATES[i & (INPUTS - 1)]);
+      case "newRunOf":
+        return i -> Run.of(DISTANCES[i & (INPUTS - 1)].doubleValue(), SECONDS[i & (INPUTS - 1)],
+            EPOCH_DAYS[i & (INPUTS - 1)]);
+      case "parseSeconds":
+        return i -> Run.parseSeconds(TIMES[i & (INPUTS - 1)]);
+      default:
+        throw new IllegalArgumentException("Unknown benchmark: " + name);
+    }
+  }
+
+  /**
+   * This method warms up and then measures the passed in operation, and prints one line of results
+   * @param name the name of the benchmark
+   * @param size the amount of runs in the log, 0 if the benchmark does not use a log
+   * @param distribution the distribution of the log, null if the benchmark does not use a log
+   * @param operation the operation to time
+   * @throws IOException if the operation throws it
+   */
+  static void run(String name, int size, Distribution distribution, Operation operation) throws IOException {
+    int[] counter = {0};
+    for (int i = 0; i < WARMUP_ITERATIONS; ++i) {
+      iterate(operation, counter);
+    }
+    double[] nanosPerOp = new double[MEASURED_ITERATIONS];
+    long operations = 0;
+    long nanos = 0;
+    long startBytes = allocatedBytes();
+    for (int i = 0; i < MEASURED_ITERATIONS; ++i) {
+      long[] result = iterate(operation, counter);
+      operations += result[0];
+      nanos += result[1];
+      nanosPerOp[i] = (double) result[1] / result[0];
+    }
+    long bytes = allocatedBytes() - startBytes;
+
+    double mean = Arrays.stream(nanosPerOp).average().getAsDouble();
+    double variance = Arrays.stream(nanosPerOp).map(value -> (value - mean) * (value - mean)).sum()
+        / Math.max(1, MEASURED_ITERATIONS - 1);
+    System.out.println(name + ", " + (size == 0 ? "-" : Integer.toString(size)) + ", "
+        + (distribution == null ? "-" : distribution.toString()) + ", " + String.format("%.1f", mean) + ", "
+        + String.format("%.1f", Math.sqrt(variance)) + ", "
+        + (bytes < 0 ? "-" : String.format("%.0f", (double) bytes / operations)) + ", "
+        + (bytes < 0 ? "-" : String.format("%.0f", bytes / 1e6 / (nanos / 1e9))));
+  }
+
+  /**
+   * This private method runs the operation for ITERATION_NANOS (or once, if one run takes longer) in batches
+   * that take about a millisecond each, so the clock is not read after every operation
+   * @return the amount of operations and the nanoseconds they took
+   */
+  private static long[] iterate(Operation operation, int[] counter) throws IOException {
+    long operations = 0;
+    int batch = 1;
+    long start = System.nanoTime();
+    long now = start;
+    while (now - start < ITERATION_NANOS) {
+      long batchStart = now;
+      int i = counter[0];
+      for (int end = i + batch; i < end; ++i) {
+        sink = operation.run(i);
+      }
+      counter[0] = i;
+      operations += batch;
+      now = System.nanoTime();
+      if (now - batchStart < 1_000_000 && batch < (1 << 20)) {
+        batch *= 2;
+      }
+    }
+    return new long[] {operations, now - start};
+  }
+
+  /**
+   * This private method gets the bytes this thread has allocated so far, or -1 if the JVM can not tell.
+   * Allocations by other threads (like the workers of a parallel readFile) are not counted
+   */
+  static long allocatedBytes() {
+    java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (threads instanceof com.sun.management.ThreadMXBean) {
+      com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+      if (allocations.isThreadAllocatedMemorySupported() && allocations.isThreadAllocatedMemoryEnabled()) {
+        return allocations.getThreadAllocatedBytes(Thread.currentThread().getId());
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * This method makes the runs of a log in the order they are entered
+   * @param size the amount of runs
+   * @param distribution how the dates of the runs are spread out
+   * @param random the random numbers used for the runs
+   * @return the runs
+   */
+  static List<Run> makeRuns(int size, Distribution distribution, Random random) {
+    LocalDate firstDay = LocalDate.of(2000, 1, 1);
+    int days = dayCount(size, distribution);
+    int[] dayOfRun = new int[size];
+    for (int i = 0; i < size; ++i) {
+      // spreads the runs evenly over the days, in date order
+      dayOfRun[i] = (int) ((long) i * days / size);
+    }
+    if (distribution == Distribution.REVERSED) {
+      for (int i = 0; i < size / 2; ++i) {
+        int swap = dayOfRun[i];
+        dayOfRun[i] = dayOfRun[size - 1 - i];
+        dayOfRun[size - 1 - i] = swap;
+      }
+    }
+    else if (distribution == Distribution.RANDOM || distribution == Distribution.MANY_PER_DAY) {
+      for (int i = size - 1; i > 0; --i) {
+        int other = random.nextInt(i + 1);
+        int swap = dayOfRun[i];
+        dayOfRun[i] = dayOfRun[other];
+        dayOfRun[other] = swap;
+      }
+    }
+    ArrayList<Run> runs = new ArrayList<>(size);
+    for (int i = 0; i < size; ++i) {
+      double distance = 1 + random.nextInt(2000) / 100.0;
+      int seconds = 5 * 60 + random.nextInt(3 * 60 * 60);
+      runs.add(new Run(distance, seconds, firstDay.plusDays(dayOfRun[i])));
+    }
+    return runs;
+  }
+
+  /**
+   * This private method gets the amount of dates the runs of a log are spread over
+   */
+  private static int dayCount(int size, Distribution distribution) {
+    if (distribution == Distribution.MANY_PER_DAY) {
+      return Math.max(1, size / RUNS_PER_DAY);
+    }
+    return Math.max(1, Math.min(size, MAX_DAYS));
+  }
+
+  /**
+   * This private method writes the runs to a temporary CSV file in the passed in order: Distance, Time, Date
+   */
+  private static File writeCsv(List<Run> runs) throws IOException {
+    File csv = File.createTempFile("runs", ".csv");
+    try (PrintWriter out = new PrintWriter(csv)) {
+      for (Run run : runs) {
+        int seconds = run.timeRan.toSecondOfDay();
+        out.println(run.distance + "," + two(seconds / 3600) + ":" + two(seconds / 60 % 60) + ":" + two(seconds % 60)
+            + "," + run.runDate);
+      }
+    }
+    return csv;
+  }
+
+  /**
+   * This private method writes a number that is less than 100 with two digits
+   */
+  private static String two(int value) {
+    return value < 10 ? "0" + value : Integer.toString(value);
+  }
+
+  /**
+   * This private method gets the name of every benchmark
+   */
+  private static List<String> allBenchmarks() {
+    ArrayList<String> names = new ArrayList<>(Arrays.asList(RUN_BENCHMARKS));
+    names.addAll(Arrays.asList(LOG_BENCHMARKS));
+    return names;
+  }
+
+  /**
+   * This private method compares the paces of random pairs of runs
+   */
+  private static Operation comparePace() {
+    int[] paces = new int[INPUTS + 1];
+    Random random = new Random(42);
+    for (int i = 0; i < paces.length; ++i) {
+      paces[i] = 240 + random.nextInt(600);
+    }
+    return i -> RunStorage.comparePace(paces[i & (INPUTS - 1)], paces[(i & (INPUTS - 1)) + 1]);
+  }
+
+  /**
+   * This class holds a log of one size and distribution that the log benchmarks work on, and makes their inputs
+   */
+  static class Log {
+    int size;
+    Distribution distribution;
+    Random random = new Random(42);
+    List<Run> runs;
+    RunStorage storage = new RunStorage();
+    LocalDate firstDay;
+    int days; // the amount of dates the runs are spread over
+    File csv = null; // the runs written to a CSV file, made by the first readFile benchmark
+
+    /**
+     * Constructor for a log of the passed in size and distribution
+     * @param size the amount of runs
+     * @param distribution how the dates of the runs are spread out
+     */
+    Log(int size, Distribution distribution) {
+      this.size = size;
+      this.distribution = distribution;
+      this.runs = makeRuns(size, distribution, this.random);
+      this.days = dayCount(size, distribution);
+      this.storage.addAll(this.runs);
+      this.firstDay = this.runs.stream().map(run -> run.runDate).min(LocalDate::compareTo).get();
+    }
+
+    /**
+     * This method makes the inputs of a log benchmark and gets its operation
+     * @param name one of LOG_BENCHMARKS
+     * @return the operation of the benchmark
+     * @throws IOException if the CSV file of the log could not be written
+     */
+    Operation operation(String name) throws IOException {
+      switch (name) {
+        case "addRun": {
+          // adds a run and removes it again, so the log stays the same size. Where the run goes depends on the
+          // distribution: after every run, before every run, anywhere, or onto a crowded date
+          Run[] toAdd = new Run[INPUTS];
+          for (int i = 0; i < INPUTS; ++i) {
+            int day;
+            if (this.distribution == Distribution.SORTED) {
+              day = this.days;
+            }
+            else if (this.distribution == Distribution.REVERSED) {
+              day = -1;
+            }
+            else {
+              day = this.random.nextInt(this.days);
+            }
+            toAdd[i] = new Run(5.0, 1800 + i % 600, this.firstDay.plusDays(day));
+          }
+          return i -> {
+            Run run = toAdd[i & (INPUTS - 1)];
+            this.storage.addRun(run);
+            return this.storage.removeRun(run);
+          };
+        }
+        case "readFile": {
+          if (this.csv == null) {
+            this.csv = writeCsv(this.runs);
+          }
+          String path = this.csv.getPath();
+          return i -> {
+            RunStorage loaded = new RunStorage();
+            loaded.readFile(path);
+            return loaded;
+          };
+        }
+        case "getRun": {
+          String[] dates = new String[INPUTS];
+          for (int i = 0; i < INPUTS; ++i) {
+            dates[i] = this.firstDay.plusDays(this.random.nextInt(this.days)).toString();
+          }
+          return i -> this.storage.getRun(dates[i & (INPUTS - 1)]);
+        }
+        case "findRun": {
+          // findRun is private, setRating finds the run with it and then only changes an int
+          Run[] toFind = new Run[INPUTS];
+          for (int i = 0; i < INPUTS; ++i) {
+            toFind[i] = this.runs.get(this.random.nextInt(this.size));
+          }
+          return i -> this.storage.setRating(toFind[i & (INPUTS - 1)], 1 + i % 10);
+        }
+        case "getLatest7":
+          return i -> this.storage.getLatest7();
+        case "toString":
+          return i -> this.storage.toString();
+        default:
+          throw new IllegalArgumentException("Unknown benchmark: " + name);
+      }
+    }
+
+    /**
+     * This method deletes the CSV file of the log if one was made
+     */
+    void close() {
+      if (this.csv != null) {
+        this.csv.delete();
+      }
+    }
+  }
+}
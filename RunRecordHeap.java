@@ -0,0 +1,331 @@
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * This class defines a binary heap of runs that keeps the best run (by the passed in Comparator) on top. The heap
+ * also remembers where every run is stored, so a run can be removed or moved after an edit in O(log n) instead of
+ * scanning every run. Runs that are equally good are ordered by when they were added, the earliest one wins
+ */
+public class RunRecordHeap {
+
+  Comparator<Run> order; // negative if the first run is better than the second
+  Run[] heap = new Run[16]; // the runs in heap order, the best run at index 0
+  long[] sequence = new long[16]; // the order each run was added in, used to break ties
+  Positions positions = new Positions(); // the index of every run in the heap, kept up to date on every move
+  long nextSequence = 0;
+  int size = 0;
+
+  /**
+   * Constructor for a heap of runs
+   * @param order the order of the runs, a run that compares lower is better
+   */
+  RunRecordHeap(Comparator<Run> order) {
+    this.order = order;
+  }
+
+  /**
+   * adds the passed in run to the heap
+   * @param toAdd the run to add
+   */
+  public void add(Run toAdd) {
+    this.ensureCapacity(this.size + 1);
+    this.heap[this.size] = toAdd;
+    this.sequence[this.size] = this.nextSequence++;
+    this.positions.put(toAdd, this.size);
+    ++this.size;
+    this.siftUp(this.size - 1);
+  }
+
+  /**
+   * adds all the passed in runs to the heap. If a lot of runs are added compared to the size of the heap, the
+   * whole heap is rebuilt bottom up in O(n) instead of adding each run in O(log n)
+   * @param toAdd the runs to add, equally good runs earlier in the list win ties
+   */
+  public void addAll(List<Run> toAdd) {
+    if (toAdd.size() < this.size) {
+      for (int i = 0; i < toAdd.size(); ++i) {
+        this.add(toAdd.get(i));
+      }
+      return;
+    }
+    this.ensureCapacity(this.size + toAdd.size());
+    for (int i = 0; i < toAdd.size(); ++i) {
+      this.heap[this.size] = toAdd.get(i);
+      this.sequence[this.size] = this.nextSequence++;
+      this.positions.put(this.heap[this.size], this.size);
+      ++this.size;
+    }
+
+    // building the heap swaps O(n) times in total, and every swap keeps the positions up to date
+    for (int i = this.size / 2 - 1; i >= 0; --i) {
+      this.siftDown(i);
+    }
+  }
+
+  /**
+   * Removes the passed in run from the heap
+   * @param toRemove the run to remove
+   * @return true if the run was in the heap, false otherwise
+   */
+  public boolean remove(Run toRemove) {
+    int index = this.positions.remove(toRemove);
+    if (index == -1) {
+      return false;
+    }
+    --this.size;
+    if (index != this.size) {
+      // moves the last run into the empty spot and puts it back in heap order
+      this.move(this.size, index);
+      this.siftUp(index);
+      this.siftDown(index);
+    }
+    this.heap[this.size] = null;
+    return true;
+  }
+
+  /**
+   * Puts the passed in run back in heap order after one of the values it is ordered by has changed
+   * @param toUpdate the run that was edited
+   */
+  public void update(Run toUpdate) {
+    int index = this.positions.get(toUpdate);
+    if (index == -1) {
+      return;
+    }
+    this.siftUp(index);
+    this.siftDown(this.positions.get(toUpdate));
+  }
+
+  /**
+   * Puts the passed in run in the place of a run in the heap, the new run has to be equally good
+   * @param toReplace the run in the heap
+   * @param replacement the run that takes its place
+   */
+  public void replace(Run toReplace, Run replacement) {
+    int index = this.positions.remove(toReplace);
+    if (index == -1) {
+      return;
+    }
+    this.heap[index] = replacement;
+    this.positions.put(replacement, index);
+  }
+
+  /**
+   * This method gets the best run in the heap
+   * @return the best run, or null if the heap is empty
+   */
+  public Run peek() {
+    return this.size == 0 ? null : this.heap[0];
+  }
+
+  /**
+   * This method gets the amount of runs in the heap
+   * @return the size field variable
+   */
+  public int getSize() {
+    return this.size;
+  }
+
+  /**
+   * This method gets the amount of bytes the arrays of the heap take up
+   * @return the size of the heap, sequence and position arrays in bytes
+   */
+  long getMemoryBytes() {
+    return this.heap.length * 12L + this.positions.getMemoryBytes();
+  }
+
+  /**
+   * This private method moves the run at the passed in index up until its parent is better than it
+   */
+  private void siftUp(int index) {
+    while (index > 0) {
+      int parent = (index - 1) / 2;
+      if (!this.isBetter(index, parent)) {
+        return;
+      }
+      this.swap(index, parent);
+      index = parent;
+    }
+  }
+
+  /**
+   * This private method moves the run at the passed in index down until it is better than both of its children
+   */
+  private void siftDown(int index) {
+    while (true) {
+      int best = index;
+      int left = 2 * index + 1;
+      int right = left + 1;
+      if (left < this.size && this.isBetter(left, best)) {
+        best = left;
+      }
+      if (right < this.size && this.isBetter(right, best)) {
+        best = right;
+      }
+      if (best == index) {
+        return;
+      }
+      this.swap(index, best);
+      index = best;
+    }
+  }
+
+  /**
+   * This private method tells if the run at index i is better than the run at index j
+   */
+  private boolean isBetter(int i, int j) {
+    int compare = this.order.compare(this.heap[i], this.heap[j]);
+    if (compare != 0) {
+      return compare < 0;
+    }
+    return this.sequence[i] < this.sequence[j];
+  }
+
+  /**
+   * This private method swaps two runs in the heap and updates their positions
+   */
+  private void swap(int i, int j) {
+    Run tempRun = this.heap[i];
+    long tempSequence = this.sequence[i];
+    this.heap[i] = this.heap[j];
+    this.sequence[i] = this.sequence[j];
+    this.heap[j] = tempRun;
+    this.sequence[j] = tempSequence;
+    this.positions.put(this.heap[i], i);
+    this.positions.put(this.heap[j], j);
+  }
+
+  /**
+   * This private method moves the run at index from to index to and updates its position
+   */
+  private void move(int from, int to) {
+    this.heap[to] = this.heap[from];
+    this.sequence[to] = this.sequence[from];
+    this.positions.put(this.heap[to], to);
+  }
+
+  /**
+   * This private method grows the heap so it can hold at least the passed in amount of runs
+   */
+  private void ensureCapacity(int capacity) {
+    if (capacity <= this.heap.length) {
+      return;
+    }
+    int newCapacity = Math.max(capacity, this.heap.length * 2);
+    this.heap = Arrays.copyOf(this.heap, newCapacity);
+    this.sequence = Arrays.copyOf(this.sequence, newCapacity);
+  }
+
+  /**
+   * This class maps every run in a heap to its index, by identity. The runs and their indexes are kept in two
+   * arrays with linear probing, so an index is a plain int and a lookup does not allocate, unlike a boxed Integer
+   * in an IdentityHashMap. The arrays are at most half full
+   */
+  static class Positions {
+
+    Run[] runs = new Run[16]; // null for an empty slot
+    int[] indexes = new int[16]; // the index in the heap of the run in the same slot
+    int size = 0;
+
+    /**
+     * This method gets the index of the passed in run
+     * @param run the run to find
+     * @return its index, or -1 if it is not in the heap
+     */
+    int get(Run run) {
+      int slot = this.slotOf(run);
+      return this.runs[slot] == null ? -1 : this.indexes[slot];
+    }
+
+    /**
+     * This method sets the index of the passed in run
+     * @param run the run
+     * @param index its index in the heap
+     */
+    void put(Run run, int index) {
+      int slot = this.slotOf(run);
+      if (this.runs[slot] == null) {
+        if ((this.size + 1) * 2 > this.runs.length) {
+          this.grow();
+          slot = this.slotOf(run);
+        }
+        this.runs[slot] = run;
+        ++this.size;
+      }
+      this.indexes[slot] = index;
+    }
+
+    /**
+     * This method takes the passed in run out
+     * @param run the run
+     * @return its index, or -1 if it was not in the heap
+     */
+    int remove(Run run) {
+      int slot = this.slotOf(run);
+      if (this.runs[slot] == null) {
+        return -1;
+      }
+      int index = this.indexes[slot];
+      // moves back every run after it that could not be found anymore with an empty slot in front of it
+      int mask = this.runs.length - 1;
+      int empty = slot;
+      for (int next = (empty + 1) & mask; this.runs[next] != null; next = (next + 1) & mask) {
+        int home = hash(this.runs[next]) & mask;
+        if (((next - home) & mask) >= ((next - empty) & mask)) {
+          this.runs[empty] = this.runs[next];
+          this.indexes[empty] = this.indexes[next];
+          empty = next;
+        }
+      }
+      this.runs[empty] = null;
+      --this.size;
+      return index;
+    }
+
+    /**
+     * This method gets the amount of bytes the arrays take up
+     * @return the size of the arrays in bytes
+     */
+    long getMemoryBytes() {
+      return this.runs.length * 8L;
+    }
+
+    /**
+     * This private method gets the slot of the passed in run, or the empty slot it would go in
+     */
+    private int slotOf(Run run) {
+      int mask = this.runs.length - 1;
+      int slot = hash(run) & mask;
+      while (this.runs[slot] != null && this.runs[slot] != run) {
+        slot = (slot + 1) & mask;
+      }
+      return slot;
+    }
+
+    /**
+     * This private method doubles the arrays and puts every run in its new slot
+     */
+    private void grow() {
+      Run[] oldRuns = this.runs;
+      int[] oldIndexes = this.indexes;
+      this.runs = new Run[oldRuns.length * 2];
+      this.indexes = new int[oldRuns.length * 2];
+      for (int i = 0; i < oldRuns.length; ++i) {
+        if (oldRuns[i] != null) {
+          int slot = this.slotOf(oldRuns[i]);
+          this.runs[slot] = oldRuns[i];
+          this.indexes[slot] = oldIndexes[i];
+        }
+      }
+    }
+
+    /**
+     * This private method spreads the identity hash code of a run over every bit
+     */
+    private static int hash(Run run) {
+      int hash = System.identityHashCode(run) * 0x9E3779B9;
+      return hash ^ (hash >>> 16);
+    }
+  }
+}
@@ -0,0 +1,591 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * This class serves a Running Log over HTTP with JSON responses. Every request is handled on its own virtual
+ * thread when the JDK has them (Java 21 and later) and on a pooled thread otherwise. The endpoints are:
+ * POST /runs with a JSON object of distance, time, date and optionally title, location, description and rating
+ * GET /runs?date=yyyy-mm-dd or GET /runs?from=yyyy-mm-dd&to=yyyy-mm-dd, GET /runs?id=42 gets a single run
+ * DELETE /runs?date=yyyy-mm-dd&index=i removes the i-th run on that date (0 if there is no index), or
+ * DELETE /runs?id=42 removes the run with that id
+ * GET /runs/latest?n=7, GET /runs/fastest, GET /runs/longest
+ * GET /runs/search?q=words finds runs by the words in their title, location or description (see RunStorage.search)
+ * GET /runs/locations or GET /runs/locations?from=yyyy-mm-dd&to=yyyy-mm-dd gets the runs, distance and seconds
+ * of every location
+ * Every endpoint that returns a list returns one page of it, so one request can not send the whole log. The page
+ * is picked with offset (0 if not passed in) and limit (MAX_PAGE if not passed in, at most MAX_PAGE), for example
+ * GET /runs?from=2020-01-01&to=2020-12-31&offset=1000&limit=1000 gets the second thousand runs of 2020
+ */
+public class RunServer {
+
+  static final int MAX_BODY_SIZE = 64 << 10; // the largest request body that is read
+  static final int DEFAULT_LATEST = 7; // the amount of runs /runs/latest returns if n is not passed in
+  static final int MAX_LATEST = 1000; // the most runs /runs/latest returns, so one request can not send the whole log
+  static final int MAX_PAGE = 1000; // the most runs or locations any other list endpoint returns at once
+
+  static {
+    // without TCP_NODELAY every small response on a kept alive connection waits about 40ms for the client's
+    // delayed ACK, which caps a connection at about 25 requests a second. Read once when the server is first made
+    if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+      System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+  }
+
+  ConcurrentRunStorage storage;
+  HttpServer server;
+  ExecutorService executor;
+
+  /**
+   * Constructor for a server of the passed in log. The server only listens on the loopback address
+   * @param storage the log to serve
+   * @param port the port to listen on, 0 picks a free port
+   * @throws IOException if the port could not be opened
+   */
+  RunServer(ConcurrentRunStorage storage, int port) throws IOException {
+    this.storage = storage;
+    this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+    this.executor = newRequestExecutor();
+    this.server.setExecutor(this.executor);
+    this.server.createContext("/runs", this::handle);
+  }
+
+  /**
+   * This method starts answering requests
+   */
+  public void start() {
+    this.server.start();
+  }
+
+  /**
+   * This method stops the server, requests that are running get up to a second to finish
+   */
+  public void stop() {
+    this.server.stop(1);
+    this.executor.shutdown();
+  }
+
+  /**
+   * This method gets the port the server listens on
+   * @return the port
+   */
+  public int getPort() {
+    return this.server.getAddress().getPort();
+  }
+
+  /**
+   * This method makes the executor requests are handled on, one virtual thread per request if the JDK has them.
+   * They are looked up by reflection so the server still compiles and runs on older JDKs
+   * @return the executor for requests
+   */
+  static ExecutorService newRequestExecutor() {
+    try {
+      Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) factory.invoke(null);
+    }
+    catch (ReflectiveOperationException e) {
+      return Executors.newCachedThreadPool();
+    }
+  }
+
+  /**
+   * This private method answers one request
+   */
+  private void handle(HttpExchange exchange) throws IOException {
+    try {
+      String path = exchange.getRequestURI().getPath();
+      String method = exchange.getRequestMethod();
+      Map<String, String> query = parseQuery(exchange.getRequestURI());
+      switch (path) {
+        case "/runs":
+        case "/runs/":
+          if (method.equals("GET")) {
+            this.getRuns(exchange, query);
+          }
+          else if (method.equals("POST")) {
+            this.addRun(exchange);
+          }
+          else if (method.equals("DELETE")) {
+            this.removeRun(exchange, query);
+          }
+          else {
+            sendError(exchange, 405, "Method not allowed");
+          }
+          break;
+
+        case "/runs/latest":
+          if (requireGet(exchange)) {
+            int n = intParameter(query, "n", DEFAULT_LATEST, MAX_LATEST);
+            sendRuns(exchange, 200, this.storage.getLatest(n));
+          }
+          break;
+
+        case "/runs/search":
+          if (requireGet(exchange)) {
+            sendRuns(exchange, 200, page(this.storage.search(query.get("q")), query));
+          }
+          break;
+
+        case "/runs/locations":
+          if (requireGet(exchange)) {
+            this.getLocations(exchange, query);
+          }
+          break;
+
+        case "/runs/fastest":
+          if (requireGet(exchange)) {
+            sendRun(exchange, this.storage.getFastest());
+          }
+          break;
+
+        case "/runs/longest":
+          if (requireGet(exchange)) {
+            sendRun(exchange, this.storage.getLongest());
+          }
+          break;
+
+        default:
+          sendError(exchange, 404, "Not found");
+      }
+    }
+    catch (IllegalArgumentException | DateTimeException | NoSuchElementException e) {
+      // bad dates, numbers and times sent by the client
+      sendError(exchange, 400, e.getMessage() == null ? "Bad request" : e.getMessage());
+    }
+    catch (RuntimeException e) {
+      sendError(exchange, 500, "Internal error");
+    }
+    finally {
+      exchange.close();
+    }
+  }
+
+  /**
+   * This private method answers GET /runs with the run with an id, or the runs on a date or in a range of dates
+   */
+  private void getRuns(HttpExchange exchange, Map<String, String> query) throws IOException {
+    if (query.containsKey("id")) {
+      Run found;
+      try {
+        found = this.storage.getRunById(Long.parseLong(query.get("id")));
+      }
+      catch (NoSuchElementException e) {
+        sendError(exchange, 404, "No such run");
+        return;
+      }
+      StringBuilder body = new StringBuilder(256);
+      appendRun(body, found);
+      send(exchange, 200, body);
+    }
+    else if (query.containsKey("date")) {
+      LocalDate date = LocalDate.parse(query.get("date"));
+      sendRuns(exchange, 200, this.storage.getRuns(date, date, offset(query), limit(query)));
+    }
+    else if (query.containsKey("from") && query.containsKey("to")) {
+      LocalDate from = LocalDate.parse(query.get("from"));
+      LocalDate to = LocalDate.parse(query.get("to"));
+      sendRuns(exchange, 200, this.storage.getRuns(from, to, offset(query), limit(query)));
+    }
+    else {
+      sendError(exchange, 400, "Pass a date, or a from and a to date");
+    }
+  }
+
+  /**
+   * This private method answers GET /runs/locations with the totals of every location, over every run if no
+   * range is passed in
+   */
+  private void getLocations(HttpExchange exchange, Map<String, String> query) throws IOException {
+    LocalDate from = query.containsKey("from") ? LocalDate.parse(query.get("from")) : LocalDate.MIN;
+    LocalDate to = query.containsKey("to") ? LocalDate.parse(query.get("to")) : LocalDate.MAX;
+    List<Map.Entry<String, RunTotals.Total>> totals =
+        page(new ArrayList<>(this.storage.getLocationTotals(from, to).entrySet()), query);
+    StringBuilder body = new StringBuilder(32 + totals.size() * 96);
+    body.append('[');
+    for (Map.Entry<String, RunTotals.Total> entry : totals) {
+      if (body.length() > 1) {
+        body.append(',');
+      }
+      RunTotals.Total total = entry.getValue();
+      body.append("{\"location\":");
+      appendString(body, entry.getKey());
+      body.append(",\"runs\":").append(total.getCount()).append(",\"distance\":").append(total.getDistance())
+          .append(",\"seconds\":").append(total.getSeconds()).append('}');
+    }
+    body.append(']');
+    send(exchange, 200, body);
+  }
+
+  /**
+   * This private method answers POST /runs by adding the run in the body
+   */
+  private void addRun(HttpExchange exchange) throws IOException {
+    Map<String, String> fields = parseObject(readBody(exchange));
+    String distance = fields.get("distance");
+    String time = fields.get("time");
+    String date = fields.get("date");
+    if (distance == null || time == null || date == null) {
+      sendError(exchange, 400, "distance, time and date are required");
+      return;
+    }
+    Run toAdd = new Run(Double.parseDouble(distance), time, date);
+    toAdd.setTitle(fields.get("title"));
+    toAdd.setLocation(fields.get("location"));
+    toAdd.setDescription(fields.get("description"));
+    if (fields.containsKey("rating")) {
+      toAdd.setRating(Integer.parseInt(fields.get("rating")));
+    }
+    this.storage.addRun(toAdd);
+    StringBuilder body = new StringBuilder(256);
+    appendRun(body, toAdd);
+    send(exchange, 201, body);
+  }
+
+  /**
+   * This private method answers DELETE /runs by removing the run with the passed in id or a run on the passed in
+   * date
+   */
+  private void removeRun(HttpExchange exchange, Map<String, String> query) throws IOException {
+    Run removed;
+    if (query.containsKey("id")) {
+      removed = this.storage.removeRunById(Long.parseLong(query.get("id")));
+    }
+    else if (query.containsKey("date")) {
+      int index = query.containsKey("index") ? Integer.parseInt(query.get("index")) : 0;
+      List<Run> onDate = this.storage.getRuns(LocalDate.parse(query.get("date")));
+      removed = index >= 0 && index < onDate.size() ? this.storage.removeRun(onDate.get(index)) : null;
+    }
+    else {
+      sendError(exchange, 400, "Pass the id or the date of the run");
+      return;
+    }
+    if (removed == null) {
+      sendError(exchange, 404, "No such run");
+      return;
+    }
+    StringBuilder body = new StringBuilder(256);
+    appendRun(body, removed);
+    send(exchange, 200, body);
+  }
+
+  /**
+   * This private method gets the page of the passed in list picked by the offset and limit of the query
+   */
+  private static <T> List<T> page(List<T> list, Map<String, String> query) {
+    int start = Math.min(offset(query), list.size());
+    return list.subList(start, start + Math.min(limit(query), list.size() - start));
+  }
+
+  /**
+   * This private method gets the offset of the page a list endpoint returns
+   */
+  private static int offset(Map<String, String> query) {
+    return intParameter(query, "offset", 0, Integer.MAX_VALUE);
+  }
+
+  /**
+   * This private method gets the size of the page a list endpoint returns
+   */
+  private static int limit(Map<String, String> query) {
+    return intParameter(query, "limit", MAX_PAGE, MAX_PAGE);
+  }
+
+  /**
+   * This private method reads a number from the query, the default value if it is not there
+   * @throws IllegalArgumentException if the number is not from 0 to max
+   */
+  private static int intParameter(Map<String, String> query, String name, int defaultValue, int max) {
+    if (!query.containsKey(name)) {
+      return defaultValue;
+    }
+    int value = Integer.parseInt(query.get(name));
+    if (value < 0 || value > max) {
+      throw new IllegalArgumentException(name + " should be from 0 to " + max);
+    }
+    return value;
+  }
+
+  /**
+   * This private method answers anything but a GET with 405
+   */
+  private static boolean requireGet(HttpExchange exchange) throws IOException {
+    if (!exchange.getRequestMethod().equals("GET")) {
+      sendError(exchange, 405, "Method not allowed");
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * This private method sends one run, or 404 if there is none
+   */
+  private static void sendRun(HttpExchange exchange, Run run) throws IOException {
+    if (run == null) {
+      sendError(exchange, 404, "There are no runs");
+      return;
+    }
+    StringBuilder body = new StringBuilder(256);
+    appendRun(body, run);
+    send(exchange, 200, body);
+  }
+
+  /**
+   * This private method sends a JSON array of runs
+   */
+  private static void sendRuns(HttpExchange exchange, int status, List<Run> runs) throws IOException {
+    StringBuilder body = new StringBuilder(32 + runs.size() * 160);
+    body.append('[');
+    for (int i = 0; i < runs.size(); ++i) {
+      if (i > 0) {
+        body.append(',');
+      }
+      appendRun(body, runs.get(i));
+    }
+    body.append(']');
+    send(exchange, status, body);
+  }
+
+  /**
+   * This private method sends an error as a JSON object
+   */
+  private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+    StringBuilder body = new StringBuilder(64);
+    body.append("{\"error\":");
+    appendString(body, message);
+    body.append('}');
+    send(exchange, status, body);
+  }
+
+  /**
+   * This private method sends the passed in JSON body
+   */
+  private static void send(HttpExchange exchange, int status, CharSequence body) throws IOException {
+    byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+    exchange.sendResponseHeaders(status, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+
+  /**
+   * This method writes a run as a JSON object
+   * @param out where the run is written to
+   * @param run the run to write
+   */
+  static void appendRun(StringBuilder out, Run run) {
+    int seconds = run.timeRan.toSecondOfDay();
+    out.append("{\"id\":").append(run.id).append(",\"date\":\"").append(run.runDate).append("\",\"time\":\"");
+    out.append(seconds / 3600 < 10 ? "0" : "").append(seconds / 3600).append(':');
+    out.append(seconds / 60 % 60 < 10 ? "0" : "").append(seconds / 60 % 60).append(':');
+    out.append(seconds % 60 < 10 ? "0" : "").append(seconds % 60);
+    out.append("\",\"distance\":").append(run.distance);
+    out.append(",\"pace\":\"").append(run.getPace()).append('"');
+    out.append(",\"title\":");
+    appendString(out, run.title);
+    out.append(",\"location\":");
+    appendString(out, run.location);
+    out.append(",\"description\":");
+    appendString(out, run.description);
+    out.append(",\"rating\":").append(run.rating).append('}');
+  }
+
+  /**
+   * This private method writes a String as a JSON string, or null
+   */
+  private static void appendString(StringBuilder out, String value) {
+    if (value == null) {
+      out.append("null");
+      return;
+    }
+    out.append('"');
+    for (int i = 0; i < value.length(); ++i) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        out.append('\\').append(c);
+      }
+      else if (c < 0x20) {
+        out.append(String.format("\\u%04x", (int) c));
+      }
+      else {
+        out.append(c);
+      }
+    }
+    out.append('"');
+  }
+
+  /**
+   * This private method reads the body of a request, up to MAX_BODY_SIZE bytes
+   */
+  private static String readBody(HttpExchange exchange) throws IOException {
+    try (InputStream in = exchange.getRequestBody()) {
+      byte[] bytes = in.readNBytes(MAX_BODY_SIZE + 1);
+      if (bytes.length > MAX_BODY_SIZE) {
+        throw new IllegalArgumentException("Request body is too large");
+      }
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+  }
+
+  /**
+   * This method reads the query of a URI into a map of names to decoded values
+   * @param uri the URI of the request
+   * @return every name in the query mapped to its value
+   */
+  static Map<String, String> parseQuery(URI uri) {
+    HashMap<String, String> values = new HashMap<>();
+    String query = uri.getRawQuery();
+    if (query == null || query.isEmpty()) {
+      return values;
+    }
+    String[] pairs = query.split("&");
+    for (int i = 0; i < pairs.length; ++i) {
+      int equals = pairs[i].indexOf('=');
+      if (equals > 0) {
+        values.put(URLDecoder.decode(pairs[i].substring(0, equals), StandardCharsets.UTF_8),
+            URLDecoder.decode(pairs[i].substring(equals + 1), StandardCharsets.UTF_8));
+      }
+    }
+    return values;
+  }
+
+  /**
+   * This method reads a flat JSON object (no nested objects or arrays) into a map of names to values. Strings are
+   * unescaped, numbers and true / false are kept as they were written and null values are left out
+   * @param json the JSON object
+   * @return every name in the object mapped to its value
+   * @throws IllegalArgumentException if the JSON is not a flat object
+   */
+  static Map<String, String> parseObject(String json) {
+    HashMap<String, String> values = new HashMap<>();
+    int[] position = {skipSpaces(json, 0)};
+    expect(json, position, '{');
+    if (peek(json, position) == '}') {
+      return values;
+    }
+    while (true) {
+      String name = readString(json, position);
+      expect(json, position, ':');
+      String value;
+      if (peek(json, position) == '"') {
+        value = readString(json, position);
+      }
+      else {
+        int start = position[0];
+        while (position[0] < json.length() && ",} \t\r\n".indexOf(json.charAt(position[0])) == -1) {
+          ++position[0];
+        }
+        value = json.substring(start, position[0]);
+        if (value.isEmpty()) {
+          throw new IllegalArgumentException("Missing value for " + name);
+        }
+        if (value.equals("null")) {
+          value = null;
+        }
+      }
+      if (value != null) {
+        values.put(name, value);
+      }
+      if (peek(json, position) == ',') {
+        ++position[0];
+        continue;
+      }
+      expect(json, position, '}');
+      return values;
+    }
+  }
+
+  /**
+   * This private method reads a JSON string starting at the position
+   */
+  private static String readString(String json, int[] position) {
+    expect(json, position, '"');
+    StringBuilder value = new StringBuilder();
+    while (position[0] < json.length()) {
+      char c = json.charAt(position[0]++);
+      if (c == '"') {
+        return value.toString();
+      }
+      if (c != '\\') {
+        value.append(c);
+        continue;
+      }
+      if (position[0] >= json.length()) {
+        break;
+      }
+      char escaped = json.charAt(position[0]++);
+      switch (escaped) {
+        case 'n':
+          value.append('\n');
+          break;
+        case 't':
+          value.append('\t');
+          break;
+        case 'r':
+          value.append('\r');
+          break;
+        case 'b':
+          value.append('\b');
+          break;
+        case 'f':
+          value.append('\f');
+          break;
+        case 'u':
+          if (position[0] + 4 > json.length()) {
+            throw new IllegalArgumentException("Invalid JSON escape");
+          }
+          value.append((char) Integer.parseInt(json.substring(position[0], position[0] + 4), 16));
+          position[0] += 4;
+          break;
+        default:
+          value.append(escaped); // \" \\ and \/
+      }
+    }
+    throw new IllegalArgumentException("Unterminated JSON string");
+  }
+
+  /**
+   * This private method skips spaces and then reads the passed in character
+   */
+  private static void expect(String json, int[] position, char expected) {
+    if (peek(json, position) != expected) {
+      throw new IllegalArgumentException("Invalid JSON, expected '" + expected + "' at " + position[0]);
+    }
+    ++position[0];
+  }
+
+  /**
+   * This private method skips spaces and gets the next character without reading it, 0 at the end
+   */
+  private static char peek(String json, int[] position) {
+    position[0] = skipSpaces(json, position[0]);
+    return position[0] < json.length() ? json.charAt(position[0]) : 0;
+  }
+
+  /**
+   * This private method gets the index of the first character at or after index that is not a space
+   */
+  private static int skipSpaces(String json, int index) {
+    while (index < json.length() && Character.isWhitespace(json.charAt(index))) {
+      ++index;
+    }
+    return index;
+  }
+}
@@ -0,0 +1,282 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * This class reads and writes a binary snapshot of a sorted list of Runs. The snapshot is formatted as such:
+ * magic number, version, journal sequence, amount of runs, string table, runs
+ * The runs are stored in date order, each date is stored as the amount of days since the date of the run before it,
+ * each id as the difference to the id of the run before it, times and string table indexes are stored as varints
+ * and every title, location and description is only stored once in the string table
+ */
+public class RunSnapshotFile {
+
+  static final int MAGIC = 0x524C4F47; // "RLOG"
+  // version 2 added the journal sequence and version 3 the run ids, older snapshots can still be read
+  static final int VERSION = 3;
+  static final int BUFFER_SIZE = 1 << 16;
+
+  /**
+   * This method writes the passed in runs to the passed in file. The snapshot is written to a temporary file
+   * first, forced to disk and then moved over the old snapshot, so a crash or power loss while saving never leaves
+   * half a snapshot behind. Once this returns the new snapshot is on disk
+   * @param file the path of the snapshot
+   * @param runs the runs to save, sorted by date
+   * @throws IOException if the snapshot could not be written
+   */
+  public static void write(Path file, List<Run> runs) throws IOException {
+    write(file, runs, 0);
+  }
+
+  /**
+   * This method writes the passed in runs to the passed in file together with the sequence number of the last
+   * journal record the runs include
+   * @param file the path of the snapshot
+   * @param runs the runs to save, sorted by date
+   * @param journalSequence the sequence number of the last journal record in the snapshot, 0 if there is none
+   * @throws IOException if the snapshot could not be written
+   */
+  static void write(Path file, List<Run> runs, long journalSequence) throws IOException {
+    // every distinct String gets an index in the string table
+    HashMap<String, Integer> indexes = new HashMap<>();
+    ArrayList<String> strings = new ArrayList<>();
+    for (int i = 0; i < runs.size(); ++i) {
+      Run currRun = runs.get(i);
+      addString(currRun.title, indexes, strings);
+      addString(currRun.location, indexes, strings);
+      addString(currRun.description, indexes, strings);
+    }
+
+    Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+    try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING)) {
+      DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE));
+      out.writeInt(MAGIC);
+      out.writeByte(VERSION);
+      out.writeLong(journalSequence);
+      writeVarint(out, runs.size());
+
+      // string table
+      writeVarint(out, strings.size());
+      for (int i = 0; i < strings.size(); ++i) {
+        byte[] bytes = strings.get(i).getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.write(bytes);
+      }
+
+      // runs, each date is the amount of days after the run before it
+      long previousDay = 0;
+      long previousId = 0;
+      for (int i = 0; i < runs.size(); ++i) {
+        Run currRun = runs.get(i);
+        long day = currRun.runDate.toEpochDay();
+        writeVarint(out, zigZag(day - previousDay));
+        previousDay = day;
+        writeVarint(out, zigZag(currRun.id - previousId));
+        previousId = currRun.id;
+        writeVarint(out, currRun.timeRan.toSecondOfDay());
+        out.writeDouble(currRun.distance);
+        out.writeByte(currRun.rating);
+        writeVarint(out, stringIndex(currRun.title, indexes));
+        writeVarint(out, stringIndex(currRun.location, indexes));
+        writeVarint(out, stringIndex(currRun.description, indexes));
+      }
+      out.flush();
+      channel.force(true); // the contents have to be on disk before the rename can be
+    }
+    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    syncDirectory(file);
+  }
+
+  /**
+   * This method forces the directory of the passed in file to disk, so a file that was just made, renamed or
+   * deleted in it stays that way after a power loss
+   * @param file a file in the directory
+   * @throws IOException if the directory could not be forced to disk
+   */
+  static void syncDirectory(Path file) throws IOException {
+    Path directory = file.toAbsolutePath().getParent();
+    try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+      channel.force(true);
+    }
+    catch (IOException e) {
+      // Windows can not open a directory, and it makes renames durable by itself
+      if (!System.getProperty("os.name").startsWith("Windows")) {
+        throw e;
+      }
+    }
+  }
+
+  /**
+   * This method reads every run in the passed in snapshot. The runs are read in the order they were saved in,
+   * which is sorted by date
+   * @param file the path of the snapshot
+   * @return the runs of the snapshot, sorted by date
+   * @throws IOException if the snapshot could not be read or is not a valid snapshot
+   */
+  public static List<Run> read(Path file) throws IOException {
+    return readSnapshot(file).runs;
+  }
+
+  /**
+   * This method reads the passed in snapshot with the sequence number of the last journal record it includes
+   * @param file the path of the snapshot
+   * @return the runs of the snapshot, sorted by date, and its journal sequence
+   * @throws IOException if the snapshot could not be read or is not a valid snapshot
+   */
+  static Snapshot readSnapshot(Path file) throws IOException {
+    Snapshot snapshot = new Snapshot();
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE))) {
+      if (in.readInt() != MAGIC) {
+        throw new IOException("Not a Running Log snapshot: " + file);
+      }
+      int version = in.readUnsignedByte();
+      if (version < 1 || version > VERSION) {
+        throw new IOException("Unsupported snapshot version: " + version);
+      }
+      if (version >= 2) {
+        snapshot.journalSequence = in.readLong();
+      }
+      int amount = (int) readVarint(in);
+
+      // string table
+      String[] strings = new String[(int) readVarint(in)];
+      for (int i = 0; i < strings.length; ++i) {
+        byte[] bytes = new byte[(int) readVarint(in)];
+        in.readFully(bytes);
+        strings[i] = new String(bytes, StandardCharsets.UTF_8);
+      }
+
+      // runs
+      ArrayList<Run> runs = new ArrayList<>(amount);
+      long day = 0;
+      long id = 0;
+      long highestId = 0;
+      for (int i = 0; i < amount; ++i) {
+        long delta = unZigZag(readVarint(in));
+        if (i > 0 && delta < 0) {
+          throw new IOException("Snapshot runs are not sorted by date");
+        }
+        day += delta;
+        if (version >= 3) {
+          id += unZigZag(readVarint(in));
+        }
+        int seconds = (int) readVarint(in);
+        double distance = in.readDouble();
+        Run currRun = Run.of(distance, seconds, day);
+        currRun.rating = in.readUnsignedByte();
+        currRun.title = string(strings, readVarint(in));
+        currRun.location = string(strings, readVarint(in));
+        currRun.description = string(strings, readVarint(in));
+        currRun.id = id; // 0 in older snapshots, those runs get a new id when they are added
+        highestId = Math.max(highestId, id);
+        runs.add(currRun);
+      }
+      Run.reserveId(highestId);
+      snapshot.runs = runs;
+      return snapshot;
+    }
+    catch (IllegalArgumentException | IndexOutOfBoundsException | NegativeArraySizeException | DateTimeException e) {
+      throw new IOException("Snapshot is corrupt: " + file, e);
+    }
+  }
+
+  /**
+   * This private method adds the passed in String to the string table if it is not null and not there yet
+   */
+  private static void addString(String value, HashMap<String, Integer> indexes, ArrayList<String> strings) {
+    if (value != null && !indexes.containsKey(value)) {
+      indexes.put(value, strings.size());
+      strings.add(value);
+    }
+  }
+
+  /**
+   * This private method gets the stored index of the passed in String, 0 is null and every other index is one
+   * more than the index in the string table
+   */
+  private static long stringIndex(String value, HashMap<String, Integer> indexes) {
+    return value == null ? 0 : indexes.get(value) + 1;
+  }
+
+  /**
+   * This private method gets the String of a stored index, 0 is null
+   */
+  private static String string(String[] strings, long index) {
+    return index == 0 ? null : strings[(int) (index - 1)];
+  }
+
+  /**
+   * This method writes a number that is not negative in as few bytes as possible, 7 bits per byte with the
+   * high bit set on every byte except the last one
+   * @param out the stream to write to
+   * @param value the number to write
+   * @throws IOException if the number could not be written
+   */
+  static void writeVarint(DataOutputStream out, long value) throws IOException {
+    while ((value & ~0x7FL) != 0) {
+      out.writeByte((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    out.writeByte((int) value);
+  }
+
+  /**
+   * This method reads a number written by writeVarint
+   * @param in the stream to read from
+   * @return the number
+   * @throws IOException if the number could not be read
+   */
+  static long readVarint(DataInputStream in) throws IOException {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      int curr = in.readUnsignedByte();
+      value |= (long) (curr & 0x7F) << shift;
+      if ((curr & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Varint is too long");
+  }
+
+  /**
+   * This method maps a number that can be negative to one that is not, so small negative numbers stay small
+   * @param value the number to map
+   * @return 0, -1, 1, -2, 2 ... as 0, 1, 2, 3, 4 ...
+   */
+  static long zigZag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  /**
+   * This method undoes zigZag
+   * @param value a number returned by zigZag
+   * @return the original number
+   */
+  static long unZigZag(long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  /**
+   * This class holds the runs of a snapshot and the sequence number of the last journal record they include
+   */
+  static class Snapshot {
+    List<Run> runs; // the runs of the snapshot, sorted by date
+    long journalSequence = 0; // 0 if the snapshot was not written by a journal
+  }
+}
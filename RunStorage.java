@@ -1,140 +1,650 @@
-import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
-import java.util.Scanner;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
 
 /**
- * This class defines a collection of Run objects in the form of a sorted ArrayList
+ * This class defines a collection of Run objects in the form of a sorted list
  */
 public class RunStorage {
 
-  ArrayList<Run> runStorage = new ArrayList<>(); // Sorted arraylist to store all Run objects 
+  static final long PARALLEL_READ_SIZE = 16 << 20; // files of at least this many bytes are read in parallel
+  static final long BYTES_PER_RUN = 150; // estimated memory of one run and its strings and words, without arrays
+  static final int MAX_POOLED_TITLES = 1 << 16; // titles can be different for every run, so only so many are pooled
+
+  SegmentedRunList runStorage = new SegmentedRunList(); // Sorted list to store all Run objects 
   int size = 0;
-  Run fastestRun = null;
-  Run longestRun = null;
+  // every run ordered by pace and by distance, so the fastest and longest run are always on top
+  RunRecordHeap fastestRuns = new RunRecordHeap((run1, run2) -> comparePace(run2.paceOfRun, run1.paceOfRun));
+  RunRecordHeap longestRuns = new RunRecordHeap((run1, run2) -> Double.compare(run2.distance, run1.distance));
+  PersonalRecords records = new PersonalRecords(); // the fastest run of every distance bucket
+  RunTotals totals = new RunTotals(); // distance, time and amount of runs of every day, for range totals
+  TrainingLoad trainingLoad = new TrainingLoad(this.totals); // acute and chronic load, computed from the totals
+  RunTextIndex textIndex = new RunTextIndex(); // the runs with each word of their title, location and description
+  RunIdMap byId = new RunIdMap(); // every run by its id, so a run can be found without searching the list
+  // the titles and locations of the runs, each run keeps the pooled copy of its Strings
+  RunStringPool titles = new RunStringPool(MAX_POOLED_TITLES);
+  RunStringPool locations = new RunStringPool();
+  int[] locationCounts = new int[16]; // the amount of runs at every location, by its code in locations
+  RunJournal journal = null; // the log every change is written to, or null if changes are not saved
+  boolean copyOnWrite = false; // true if runs are never edited in place, since readers may hold them without a lock
   
   /**
    * This method reads in a CSV file of Run and adds each Run to the collection. The CSV file will be sorted as such:
    * Distance, Time, Date(If applicable)
+   * The file is memory mapped and parsed by RunFileReader, then all of its runs are added in one step
    * @param fileName
-   * @throws FileNotFoundException 
-   */
-  public void readFile(String fileName) throws FileNotFoundException {
-    File aFile = new File(fileName);
-    Scanner scnr = null; 
-    scnr = new Scanner(aFile);
-
-    while(scnr.hasNextLine()) {
-      // reads one line and splits it by: ","
-      String currLine = scnr.nextLine();
-      String[] runToSave = currLine.split(","); // [Distance, Time, Date]
-      // error checking
-      if (runToSave.length > 3 || runToSave.length < 1) {
-        System.out.println("Error: did not have nessasary data to log run");
-        return;
-      }
-      // save currLine information into a Run Object
-      double distance = Double.parseDouble(runToSave[0]);
-      String time = runToSave[1];
-      Run toAdd;
-      // if the only provided information was distance and time
-      if (runToSave.length == 2) {
-        toAdd = new Run(distance,time);
-      }
-      else {
-        // if the provided information was distance,time,date
-        String date = runToSave[2];
-        toAdd = new Run(distance,time,date);
-      }
-
-      this.addRun(toAdd);
+   * @throws IOException if the file does not exist or could not be read
+   */
+  public void readFile(String fileName) throws IOException {
+    Path file = Path.of(fileName);
+    // large files are split up and parsed on every core
+    if (Files.size(file) >= PARALLEL_READ_SIZE) {
+      this.readFileParallel(fileName);
+      return;
     }
+    long start = RunMetrics.start();
+    List<Run> read = RunFileReader.readRuns(file);
+    this.addAll(read);
+    RunMetrics.fileRead(start, read.size());
+  }
 
+  /**
+   * This method reads in a CSV file of Run the same way as readFile, but parses newline aligned parts of the file
+   * on the common ForkJoinPool. The Runs end up in the same order as they would with a sequential load
+   * @param fileName
+   * @throws IOException if the file does not exist or could not be read
+   */
+  public void readFileParallel(String fileName) throws IOException {
+    long start = RunMetrics.start();
+    RunFileReader.ParsedRuns parsed = RunFileReader.readRunsParallel(Path.of(fileName), ForkJoinPool.commonPool());
+    this.addSorted(parsed.runs);
+    RunMetrics.fileRead(start, parsed.runs.size());
   }
 
 
   /**
-   * adds the passed in run to the ArrayList field than sorts the Arraylist
+   * This method saves every Run in this collection to a binary snapshot file that loadSnapshot can read back
+   * @param file the path of the snapshot
+   * @throws IOException if the snapshot could not be written
+   */
+  public void saveSnapshot(Path file) throws IOException {
+    RunSnapshotFile.write(file, this.runStorage);
+  }
+
+  /**
+   * This method reads in a snapshot written by saveSnapshot and adds each Run to the collection. The runs in the
+   * snapshot are already sorted, so they are added in one step without sorting
+   * @param file the path of the snapshot
+   * @throws IOException if the snapshot does not exist, could not be read or is not a valid snapshot
+   */
+  public void loadSnapshot(Path file) throws IOException {
+    this.addSorted(RunSnapshotFile.read(file));
+  }
+
+  /**
+   * adds the passed in run to the sorted list after every run on or before its date, so the list stays
+   * sorted and runs on the same day stay in the order they were added. A run that has no id yet gets one
    * @param toAdd the run to add to the sorted array
    */
   public void addRun(Run toAdd) {
-    // saves the passed in run as longest AND fastest run if no elements are present in the collection yet
-    if (this.getSize() == 0) {
-      this.longestRun = toAdd;
-      this.fastestRun = toAdd;
+    this.checkJournal();
+    long start = RunMetrics.start();
+    this.assignId(toAdd);
+    this.pool(toAdd);
+    this.totals.add(toAdd);
+    this.trainingLoad.changed(toAdd);
+    // the heaps keep the longest and fastest run on top, an earlier run wins if two runs are tied
+    this.longestRuns.add(toAdd);
+    this.fastestRuns.add(toAdd);
+    this.records.add(toAdd);
+    this.textIndex.add(toAdd);
+
+    // finally, adds run to the Collection
+    runStorage.add(this.upperBound(toAdd), toAdd);
+    ++size;
+
+    if (this.journal != null) {
+      this.journal.logAdds(List.of(toAdd));
+    }
+    RunMetrics.ingested(1);
+    RunMetrics.ADD_RUN.record(start);
+  }
+
+  /**
+   * adds all the passed in runs to the sorted list. The runs are sorted once and then merged into the already
+   * sorted list, so adding a large batch (like a whole CSV file) doesn't re-sort the collection after every run
+   * @param toAdd the runs to add to the sorted array
+   */
+  public void addAll(Collection<Run> toAdd) {
+    this.checkJournal();
+    long start = RunMetrics.start();
+    ArrayList<Run> batch = new ArrayList<>(toAdd);
+    // ids are given in the order the runs were passed in, before sorting
+    this.assignIds(batch);
+    for (int i = 0; i < batch.size(); ++i) {
+      this.pool(batch.get(i));
+    }
+    this.totals.addAll(batch);
+    this.trainingLoad.changed(batch);
+    // the heaps get the runs in the order they were passed in, so an earlier run wins ties like addRun
+    this.longestRuns.addAll(batch);
+    this.fastestRuns.addAll(batch);
+    this.records.addAll(batch);
+    this.textIndex.addAll(batch);
+
+    // runs on the same day are sorted by id, so they keep the order they were passed in
+    ArrayList<Run> sorted = new ArrayList<>(batch);
+    Collections.sort(sorted);
+    this.mergeSorted(sorted);
+
+    // logged once the runs are in the collection, a compaction started by the journal saves them too
+    if (this.journal != null) {
+      this.journal.logAdds(batch);
+    }
+    RunMetrics.ingested(batch.size());
+    RunMetrics.ADD_ALL.record(start);
+  }
+
+  /**
+   * adds all the passed in runs, which are already sorted, to the heaps and the sorted list. Runs on the same
+   * day that already have ids should be sorted by id. A run whose id is already used in this collection gets a new
+   * id, which can move it behind later runs of its day, so then the runs are sorted again before they are merged
+   * @param sorted the runs to add, sorted by date
+   */
+  void addSorted(List<Run> sorted) {
+    this.checkJournal();
+    long start = RunMetrics.start();
+    this.assignIds(sorted);
+    if (!isSorted(sorted)) {
+      sorted = new ArrayList<>(sorted);
+      sorted.sort(null);
+    }
+    for (int i = 0; i < sorted.size(); ++i) {
+      this.pool(sorted.get(i));
+    }
+    this.totals.addAll(sorted);
+    this.trainingLoad.changed(sorted);
+    this.longestRuns.addAll(sorted);
+    this.fastestRuns.addAll(sorted);
+    this.records.addAll(sorted);
+    this.textIndex.addAll(sorted);
+    this.mergeSorted(sorted);
+    if (this.journal != null) {
+      this.journal.logAdds(sorted);
+    }
+    RunMetrics.ingested(sorted.size());
+    RunMetrics.ADD_ALL.record(start);
+  }
+
+  /**
+   * Merges an already sorted list of runs into the sorted list. Runs on the same day are ordered by id, so runs
+   * already in the collection stay in front of newer runs. The runs should already be in the longest and fastest
+   * heaps
+   * @param sorted the runs to add, sorted by date
+   */
+  void mergeSorted(List<Run> sorted) {
+    if (sorted.isEmpty()) {
+      return;
+    }
+
+    // if every new run is on or after the latest stored run, the runs can just be appended
+    int last = this.runStorage.size() - 1;
+    if (last == -1 || this.runStorage.get(last).compareTo(sorted.get(0)) <= 0) {
+      this.runStorage.addAll(sorted);
+    }
+    else {
+      // otherwise merge both sorted lists in place, filling the grown list from the back in a single pass
+      int i = last;
+      int j = sorted.size() - 1;
+      this.runStorage.addAll(sorted);
+      for (int k = this.runStorage.size() - 1; j >= 0; --k) {
+        if (i >= 0 && this.runStorage.get(i).compareTo(sorted.get(j)) > 0) {
+          this.runStorage.set(k, this.runStorage.get(i--));
+        }
+        else {
+          this.runStorage.set(k, sorted.get(j--));
+        }
+      }
+    }
+    this.size += sorted.size();
+  }
+
+  /**
+   * This private method makes sure a change can be saved before it is made, so memory never has a change that the
+   * journal could not write
+   */
+  private void checkJournal() {
+    if (this.journal != null) {
+      this.journal.checkWritable();
+    }
+  }
+
+  /**
+   * This private method gives the passed in run an id if it has none and maps the id to the run. A run keeps the
+   * id it already has, unless a different run in this collection has the same id (like a copy of a run that was
+   * added twice), then it gets a new one
+   */
+  private void assignId(Run toAdd) {
+    if (toAdd.id == 0) {
+      toAdd.id = Run.nextId();
     }
     else {
-      // will save passed in Run as "Longest Run" if it is longer than the current "Longest Run"
-      if (Double.compare(longestRun.distance, toAdd.distance) < 0) {
-        this.longestRun = toAdd;
+      Run current = this.byId.get(toAdd.id);
+      if (current == toAdd) {
+        throw new IllegalArgumentException("Run is already in this log");
       }
-      // will save passed in Run as "Fastest Run" if it is Faster than the current "Fastest Run"
-      if (this.comparePace(toAdd.paceOfRun, this.fastestRun.paceOfRun) > 0) {
-        this.fastestRun = toAdd;
+      if (current != null) {
+        toAdd.id = Run.nextId();
       }
     }
+    this.byId.put(toAdd.id, toAdd);
+  }
 
-    // finally, adds run to the Collection
-    runStorage.add(toAdd);
-    Collections.sort(runStorage);
-    ++size;
+  /**
+   * This private method gives every passed in run an id like assignId. If one of them is already in this
+   * collection the ids of the runs before it are taken back out, so nothing has changed when the error is thrown
+   */
+  private void assignIds(List<Run> toAdd) {
+    int i = 0;
+    try {
+      for (; i < toAdd.size(); ++i) {
+        this.assignId(toAdd.get(i));
+      }
+    }
+    catch (IllegalArgumentException e) {
+      for (int j = 0; j < i; ++j) {
+        this.byId.remove(toAdd.get(j).id);
+      }
+      throw e;
+    }
+  }
 
+  /**
+   * This private method checks that the passed in runs are sorted by date and then id
+   */
+  private static boolean isSorted(List<Run> runs) {
+    for (int i = 1; i < runs.size(); ++i) {
+      if (runs.get(i - 1).compareTo(runs.get(i)) > 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * This private method swaps the title and location of a run that is added for the copies kept by the string
+   * pools and counts the run at its location
+   */
+  private void pool(Run toAdd) {
+    this.poolTitle(toAdd);
+    this.poolLocation(toAdd);
+  }
+
+  /**
+   * This private method swaps the title of the passed in run for the copy kept by the title pool
+   */
+  private void poolTitle(Run run) {
+    run.titleCode = this.titles.encode(run.title, run.titleCode);
+    if (run.titleCode >= 0) {
+      run.title = this.titles.decode(run.titleCode);
+    }
+  }
+
+  /**
+   * This private method swaps the location of the passed in run for the copy kept by the location pool and counts
+   * the run at its location
+   */
+  private void poolLocation(Run run) {
+    int code = this.locations.encode(run.location, run.locationCode);
+    run.locationCode = code;
+    if (code < 0) {
+      return;
+    }
+    run.location = this.locations.decode(code);
+    if (code >= this.locationCounts.length) {
+      this.locationCounts = Arrays.copyOf(this.locationCounts, Math.max(code + 1, this.locationCounts.length * 2));
+    }
+    ++this.locationCounts[code];
   }
 
   /**
-   * Removes the passed in object from the arrayList using bubble sort since the array will stay sorted
+   * This private method gets the code of the location of a run in this collection. The run keeps the code of the
+   * collection it was added to last, which is only used after checking it against the location pool
+   */
+  private int locationCode(Run run) {
+    return this.locations.codeOf(run.location, run.locationCode);
+  }
+
+  /**
+   * Removes the passed in object from the arrayList, the run is found with a binary search since the array will
+   * stay sorted
    * @param toRemove the Run object that is going to be removed
    * @return the removed run, or null if it was not found
    */
   public Run removeRun(Run toRemove) {
-    // makes a temp object to be able to compare this Run from another in this collection
+    this.checkJournal();
+    long start = RunMetrics.start();
     int indexOfRun = this.findRun(toRemove);
     if (indexOfRun == -1) {
+      RunMetrics.REMOVE_RUN.record(start);
       return null;
     }
     else {
       --this.size;
-      if (toRemove.compareTo(this.getFastest()) == 0) { // if fastest was removed
-        this.setFastest();
-      } 
-      if (toRemove.compareTo(this.longestRun) == 0) { // if longest was removed
-        this.setLongest(); 
+      Run removed = this.runStorage.remove(indexOfRun); // removes the run from the sorted list
+      this.byId.remove(removed.id);
+      int locationCode = this.locationCode(removed);
+      if (locationCode >= 0) {
+        --this.locationCounts[locationCode];
+      }
+      // if the fastest or longest run was removed, the next best one moves to the top of its heap
+      long recordsStart = RunMetrics.start();
+      this.fastestRuns.remove(removed);
+      this.longestRuns.remove(removed);
+      this.records.remove(removed);
+      RunMetrics.RECORDS.record(recordsStart);
+      this.totals.remove(removed);
+      this.trainingLoad.changed(removed);
+      this.textIndex.remove(removed);
+      if (this.journal != null) {
+        this.journal.logRemove(indexOfRun);
       }
-      return this.runStorage.remove(indexOfRun); // removes and returns the removed run
+      RunMetrics.REMOVE_RUN.record(start);
+      return removed;
+    }
+  }
+
+  /**
+   * Removes the run with the passed in id
+   * @param id the id of the run
+   * @return the removed run, or null if no run has that id
+   */
+  public Run removeRunById(long id) {
+    Run toRemove = this.byId.get(id);
+    return toRemove == null ? null : this.removeRun(toRemove);
+  }
+
+  /**
+   * Resets the total time of the passed in run and moves it to its new spot in the fastest heap since its
+   * pace has changed
+   * @param toEdit a run in this collection
+   * @param time the new time for the run
+   * @return the edited run, a copy of the passed in run if a snapshot holds it
+   */
+  public Run setRunTime(Run toEdit, String time) {
+    this.checkJournal();
+    long start = RunMetrics.start();
+    int index = this.indexOf(toEdit);
+    int seconds = Run.parseRunTime(time); // checked before a copy is swapped in
+    toEdit = this.editable(toEdit, index);
+    int oldSeconds = toEdit.timeRan.toSecondOfDay();
+    toEdit.setRunSeconds(seconds);
+    this.runTimeChanged(toEdit, index, oldSeconds);
+    RunMetrics.EDIT.record(start);
+    return toEdit;
+  }
+
+  /**
+   * Resets the total time of the passed in run to the passed in amount of seconds, used when replaying a journal
+   * @param toEdit a run in this collection
+   * @param seconds the new time for the run in seconds
+   * @return the edited run, a copy of the passed in run if a snapshot holds it
+   */
+  Run setRunSeconds(Run toEdit, int seconds) {
+    this.checkJournal();
+    long start = RunMetrics.start();
+    int index = this.indexOf(toEdit);
+    Run.checkSeconds(seconds); // checked before a copy is swapped in
+    toEdit = this.editable(toEdit, index);
+    int oldSeconds = toEdit.timeRan.toSecondOfDay();
+    toEdit.setRunSeconds(seconds);
+    this.runTimeChanged(toEdit, index, oldSeconds);
+    RunMetrics.EDIT.record(start);
+    return toEdit;
+  }
+
+  /**
+   * This private method updates everything that depends on the time of the run at the passed in index
+   */
+  private void runTimeChanged(Run toEdit, int index, int oldSeconds) {
+    long recordsStart = RunMetrics.start();
+    this.fastestRuns.update(toEdit);
+    this.records.timeChanged(toEdit);
+    RunMetrics.RECORDS.record(recordsStart);
+    this.totals.timeChanged(toEdit, oldSeconds);
+    this.trainingLoad.changed(toEdit);
+    if (this.journal != null) {
+      this.journal.logSetTime(index, toEdit.timeRan.toSecondOfDay());
+    }
+  }
+
+  /**
+   * Sets the title of the passed in run
+   * @param toEdit a run in this collection
+   * @param title the title of run
+   * @return the edited run, a copy of the passed in run if a snapshot holds it
+   */
+  public Run setTitle(Run toEdit, String title) {
+    this.checkJournal();
+    long start = RunMetrics.start();
+    int index = this.indexOf(toEdit);
+    toEdit = this.editable(toEdit, index);
+    String oldTitle = toEdit.getTitle();
+    toEdit.setTitle(title);
+    this.poolTitle(toEdit);
+    this.textIndex.changed(toEdit, RunTextIndex.TITLE, oldTitle);
+    if (this.journal != null) {
+      this.journal.logSetText(RunJournal.SET_TITLE, index, title);
+    }
+    RunMetrics.EDIT.record(start);
+    return toEdit;
+  }
+
+  /**
+   * Sets the location of the passed in run
+   * @param toEdit a run in this collection
+   * @param location the location of the run
+   * @return the edited run, a copy of the passed in run if a snapshot holds it
+   */
+  public Run setLocation(Run toEdit, String location) {
+    this.checkJournal();
+    long start = RunMetrics.start();
+    int index = this.indexOf(toEdit);
+    toEdit = this.editable(toEdit, index);
+    String oldLocation = toEdit.getLocation();
+    int locationCode = this.locationCode(toEdit);
+    if (locationCode >= 0) {
+      --this.locationCounts[locationCode];
     }
+    toEdit.setLocation(location);
+    this.poolLocation(toEdit);
+    this.textIndex.changed(toEdit, RunTextIndex.LOCATION, oldLocation);
+    if (this.journal != null) {
+      this.journal.logSetText(RunJournal.SET_LOCATION, index, location);
+    }
+    RunMetrics.EDIT.record(start);
+    return toEdit;
   }
 
   /**
-   * This method finds the index of the passed in run 
+   * Sets the description of the passed in run
+   * @param toEdit a run in this collection
+   * @param description the description of the run
+   * @return the edited run, a copy of the passed in run if a snapshot holds it
+   */
+  public Run setDescription(Run toEdit, String description) {
+    this.checkJournal();
+    long start = RunMetrics.start();
+    int index = this.indexOf(toEdit);
+    toEdit = this.editable(toEdit, index);
+    String oldDescription = toEdit.getDescription();
+    toEdit.setDescription(description);
+    this.textIndex.changed(toEdit, RunTextIndex.DESCRIPTION, oldDescription);
+    if (this.journal != null) {
+      this.journal.logSetText(RunJournal.SET_DESCRIPTION, index, description);
+    }
+    RunMetrics.EDIT.record(start);
+    return toEdit;
+  }
+
+  /**
+   * Sets the rating of the passed in run, should be from the range of 1-10 (inclusive)
+   * @param toEdit a run in this collection
+   * @param rating the overall rating of the run
+   * @return the edited run, a copy of the passed in run if a snapshot holds it
+   */
+  public Run setRating(Run toEdit, int rating) {
+    this.checkJournal();
+    long start = RunMetrics.start();
+    int index = this.indexOf(toEdit);
+    Run.checkRating(rating); // checked before a copy is swapped in
+    toEdit = this.editable(toEdit, index);
+    toEdit.setRating(rating);
+    if (this.journal != null) {
+      this.journal.logSetRating(index, rating);
+    }
+    RunMetrics.EDIT.record(start);
+    return toEdit;
+  }
+
+  /**
+   * This private method gets the run at the passed in index ready to be edited. A run that an open snapshot can
+   * see, or any run when copyOnWrite is set, is never changed, it is replaced by a copy everywhere in this
+   * collection and the copy is edited instead
+   */
+  private Run editable(Run toEdit, int index) {
+    if (!this.copyOnWrite && !this.runStorage.isShared(toEdit.version)) {
+      return toEdit;
+    }
+    Run copy = toEdit.copy();
+    this.runStorage.set(index, copy);
+    this.byId.put(copy.id, copy);
+    this.fastestRuns.replace(toEdit, copy);
+    this.longestRuns.replace(toEdit, copy);
+    this.records.replace(toEdit, copy);
+    this.textIndex.replace(toEdit, copy);
+    return copy;
+  }
+
+  /**
+   * This private method finds the index of a run that should be in this collection
+   * @return the index of the run
+   */
+  private int indexOf(Run toFind) {
+    int index = this.findRun(toFind);
+    if (index == -1) {
+      throw new IllegalArgumentException("Run is not in this log");
+    }
+    return index;
+  }
+
+  /**
+   * This method finds the index of the passed in run. The runs are sorted by date and then id, so the run is
+   * found with a single binary search, no matter how many runs are on its date
    * @param toFind the Run object that we want to find
    * @return the index in which the Run is located, or -1 if not found
    */
   private int findRun(Run toFind) {
+    if (this.byId.get(toFind.id) != toFind) {
+      return -1; // quickly skips runs that are not in this collection
+    }
+    int index = this.upperBound(toFind) - 1;
+    return index >= 0 && this.runStorage.get(index) == toFind ? index : -1;
+  }
+
+  /**
+   * This method finds the index of the first run on or after the passed in date with a binary search
+   * @param date the date to look for
+   * @return the index of the first run on or after the date, or the size if every run is before the date
+   */
+  private int lowerBound(LocalDate date) {
     int low = 0;
-    int high = this.runStorage.size() - 1;
-    // bubble sort to find the run and remove it
-    while (low <= high) {
-      int mid = low + (high - low) / 2;
-
-      // if the object is found --> return the index that it was found in
-      if (this.runStorage.get(mid).compareTo(toFind) == 0) {
-        return mid;
-        
+    int high = this.runStorage.size();
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      // if current run is before the date --> look right
+      if (this.runStorage.get(mid).runDate.compareTo(date) < 0) {
+        low = mid + 1;
+      }
+      // if current run is on or after the date --> look left
+      else {
+        high = mid;
       }
+    }
+    return low;
+  }
 
-      // if current run is smaller than toRemove run --> look right
-      else if (this.runStorage.get(mid).compareTo(toFind) < 0) {
+  /**
+   * This method finds the index of the first run after the passed in date with a binary search
+   * @param date the date to look for
+   * @return the index of the first run after the date, or the size if every run is on or before the date
+   */
+  private int upperBound(LocalDate date) {
+    int low = 0;
+    int high = this.runStorage.size();
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      // if current run is on or before the date --> look right
+      if (this.runStorage.get(mid).runDate.compareTo(date) <= 0) {
         low = mid + 1;
       }
+      // if current run is after the date --> look left
+      else {
+        high = mid;
+      }
+    }
+    return low;
+  }
 
-      // if current run is bigger than toRemove run --> look left
-      else if (this.runStorage.get(mid).compareTo(toFind) > 0) {
-        high = mid - 1;
+  /**
+   * This method finds the index of the first run after the passed in run, by date and then id, with a binary
+   * search
+   * @param run the run to look for
+   * @return the index after every run that is on or before the passed in run
+   */
+  private int upperBound(Run run) {
+    int low = 0;
+    int high = this.runStorage.size();
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      // if current run is on or before the run --> look right
+      if (this.runStorage.get(mid).compareTo(run) <= 0) {
+        low = mid + 1;
+      }
+      // if current run is after the run --> look left
+      else {
+        high = mid;
       }
     }
-    return -1; 
+    return low;
+  }
+
+  /**
+   * This method finds the run with the passed in id in O(1) time
+   * @param id the id of the run
+   * @return the run with that id
+   * @throws NoSuchElementException if no run in this collection has that id
+   */
+  public Run getRunById(long id) {
+    long start = RunMetrics.start();
+    Run found = this.byId.get(id);
+    RunMetrics.GET_RUN.record(start);
+    if (found == null) {
+      throw new NoSuchElementException("No run with id " + id);
+    }
+    return found;
   }
 
   /**
@@ -148,35 +658,91 @@ public class RunStorage {
       throw new IllegalArgumentException();
     }
 
-    Run toFind = new Run(1.00, "00:10:00" ,date);
-    int index = this.findRun(toFind);
-    if (index == -1) {
+    long start = RunMetrics.start();
+    LocalDate toFind = LocalDate.parse(date);
+    int index = this.lowerBound(toFind);
+    if (index == this.runStorage.size() || !this.runStorage.get(index).runDate.equals(toFind)) {
+      RunMetrics.GET_RUN.record(start);
       throw new NoSuchElementException();
     }
-    return this.runStorage.get(index); // returns the Run at the index returned from the findRun() method
+    RunMetrics.GET_RUN.record(start);
+    return this.runStorage.get(index); // the first run on the date is the one that was entered first
   }
 
   /**
-   * This method returns an arrayList that contains the earliest 7 runs from (Earliest --> Latest) or if there are currently less
-   * than 7 run objects in the arraylist than it will return all the Run Obejcts
+   * This method gets all the runs on the passed in date, in the order they were entered
+   * @param date the date of the runs
+   * @return a read only view of the runs on that date, empty if there are none
+   */
+  public List<Run> getRuns(LocalDate date) {
+    return this.getRuns(date, date);
+  }
+
+  /**
+   * This method gets all the runs from the first date to the second date (inclusive) sorted by date. Both ends
+   * are found with a binary search and the runs are not copied, the returned list is a read only view of this
+   * collection. The view should be used before the collection is changed again, after a run is added or removed
+   * using the view throws a ConcurrentModificationException
+   * @param from the first date of the range
+   * @param to the last date of the range
+   * @return a read only view of the runs in the range, empty if there are none
+   */
+  public List<Run> getRuns(LocalDate from, LocalDate to) {
+    if (from == null || to == null) {
+      throw new IllegalArgumentException("Dates can not be null");
+    }
+    int low = this.lowerBound(from);
+    int high = Math.max(low, this.upperBound(to));
+    return Collections.unmodifiableList(this.runStorage.subList(low, high));
+  }
+
+  /**
+   * This method returns the latest 7 runs from (Latest --> Earliest) or if there are currently less than 7 run
+   * objects in the collection than it will return all the Run Obejcts. It is the same read only view as
+   * getLatest(7), nothing is copied and the runs are not changed
    * @return the latest 7 runs
    */
-  public RunStorage getLatest7() {
-    RunStorage topSeven = new RunStorage();
+  public List<Run> getLatest7() {
+    return this.getLatest(7);
+  }
 
-    // if there are less than 7 songs in the Run Collection
-    if (this.getSize() < 7) {
-      for (int i = 0; i < runStorage.size(); ++i) {
-        topSeven.addRun(this.runStorage.get(i));
-      }
-      return topSeven;
+  /**
+   * This method gets the latest runs in this collection from (Latest --> Earliest). Nothing is copied, the
+   * returned list is a read only view over the end of the sorted list, so making it costs O(1) and each
+   * run is only looked up when it is read. The view should be used before the collection is changed again
+   * @param n the amount of runs to get
+   * @return a read only view of the latest n runs, or of all the runs if there are less than n runs
+   */
+  public List<Run> getLatest(int n) {
+    if (n < 0) {
+      throw new IllegalArgumentException("Amount of runs can not be negative");
     }
+    List<Run> tail = this.runStorage.subList(Math.max(0, this.runStorage.size() - n), this.runStorage.size());
+    return new AbstractList<Run>() {
+      @Override
+      public Run get(int index) {
+        return tail.get(tail.size() - 1 - index); // the last run in the tail is the latest one
+      }
+
+      @Override
+      public int size() {
+        return tail.size();
+      }
+    };
+  }
 
-    // will return the latest 7 runs 0(Earliest) --> 6(Late)
-    for (int i = this.getSize()-1; i >= this.getSize()-7; --i) {
-      topSeven.addRun(this.runStorage.get(i));
+  /**
+   * This method gets the earliest runs in this collection from (Earliest --> Latest). Nothing is copied, the
+   * returned list is a read only view over the start of the sorted list. The view should be used before the
+   * collection is changed again
+   * @param n the amount of runs to get
+   * @return a read only view of the earliest n runs, or of all the runs if there are less than n runs
+   */
+  public List<Run> getEarliest(int n) {
+    if (n < 0) {
+      throw new IllegalArgumentException("Amount of runs can not be negative");
     }
-    return topSeven;
+    return Collections.unmodifiableList(this.runStorage.subList(0, Math.min(n, this.runStorage.size())));
   }
 
   /**
@@ -185,118 +751,245 @@ public class RunStorage {
    */
   @Override
   public String toString() {
-    String toReturn = "";
-    for (int i = 0; i < this.runStorage.size(); ++i) {
-      toReturn = toReturn + this.runStorage.get(i) + "\n" + "-----------------------------\n" ;
+    StringBuilder toReturn = new StringBuilder(this.runStorage.size() * 128);
+    try {
+      this.writeTo(toReturn);
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e); // a StringBuilder never throws
     }
-    return toReturn;
+    return toReturn.toString();
   }
 
   /**
-   * This method gets the amount of Run Objects in this collection
-   * @return the size field variable
+   * This method writes every run in this collection into the passed in Appendable, formatted the same way as
+   * toString, without building the whole text in memory first
+   * @param out where the runs are written to, should be buffered
+   * @throws IOException if out could not be written to
    */
-  public int getSize() {
-    return this.size;
+  public void writeTo(Appendable out) throws IOException {
+    this.render(out, 0, this.runStorage.size());
   }
 
   /**
-   * this method gets the longest run stored in this collection
-   * @return The longestRun field variable
+   * This method writes one page of runs into the passed in Appendable, formatted the same way as toString. The
+   * runs are found by their index in the sorted list, so every page takes as long to write no matter how far into
+   * the log it is
+   * @param out where the runs are written to, should be buffered
+   * @param offset the index of the first run to write, from the earliest run
+   * @param limit the most runs to write
+   * @return the index of the run after the last one written, which is the offset of the next page
+   * @throws IOException if out could not be written to
    */
-  public Run getLongest() {
-    return this.longestRun;
+  public int render(Appendable out, int offset, int limit) throws IOException {
+    if (offset < 0 || limit < 0) {
+      throw new IllegalArgumentException("offset and limit cannot be negative");
+    }
+    int end = (int) Math.min((long) offset + limit, this.runStorage.size());
+    for (int i = offset; i < end; ++i) {
+      this.runStorage.get(i).appendTo(out);
+      out.append("\n-----------------------------\n");
+    }
+    return Math.max(offset, end);
   }
 
   /**
-   * This method gets the Fastest run stored in this collection
-   * @return the fastestRun field variable
+   * This method finds the runs with the words of the passed in query in their title, location or description,
+   * using an inverted index instead of looking at every run. Words separated by spaces all have to match, OR
+   * between words matches either side, field:word only looks in one field (title, location or description) and
+   * word* matches every word that starts with word. Case and punctuation are ignored, for example:
+   * tempo lake*
+   * location:lakeshore OR title:long run
+   * @param query the words to look for
+   * @return the matching runs sorted by date, empty if there are none
    */
-  public Run getFastest() {
-    return this.fastestRun;
+  public List<Run> search(String query) {
+    return this.textIndex.search(query);
   }
 
   /**
-   * This private method compares two passed in Run Pace's in the form of String's and compares them to see
-   * which one is faster. The pace will be formatted as such: ##:##
-   * @param pace1 the pace of a Run Object
-   * @param pace2 the pace of a second Run Object
-   * @return a positive int if pace1 is faster than pace2, 
-   * a negative int if pace1 is slower than pace2, and 0 if they are the same
+   * This method gets the amount of Run Objects in this collection
+   * @return the size field variable
    */
-  private int comparePace(String pace1, String pace2) {
-    // seperates the numbers in each pace: [Minutes], [Seconds]
-    String[] paceOne = pace1.split(":");
-    String[] paceTwo = pace2.split(":");
-
-    // Storing the Minutes and seconds into variables of each pace
-    Double pace1Minutes = Double.parseDouble(paceOne[0]);
-    Double pace1Seconds = Double.parseDouble(paceOne[1]);
-    Double pace2Minutes = Double.parseDouble(paceTwo[0]);
-    Double pace2Seconds = Double.parseDouble(paceTwo[1]);
+  public int getSize() {
+    return this.size;
+  }
 
-    // Compare the pace1 and pace2
-    
-    // if pace1 has a lower minute number (faster)
-    if (Double.compare(pace1Minutes, pace2Minutes) < 0) {
-      return 1;
-    }
-    // if pace1 has a higher minutes number (slower)
-    if (Double.compare(pace1Minutes, pace2Minutes) > 0) {
-      return -1;
+  /**
+   * This method estimates the memory this collection takes up, from the amount of runs and the real length of
+   * every array it keeps, so a collection with runs spread over many years counts the day totals it needs
+   * @return the estimated size in bytes
+   */
+  long getMemoryBytes() {
+    long bytes = BYTES_PER_RUN * this.size + this.totals.getMemoryBytes();
+    for (int i = 0; i < this.runStorage.segmentCount; ++i) {
+      bytes += this.runStorage.segments[i].length * 4L;
     }
-    
-    // this section is if the numbers are equal
+    bytes += this.byId.keys.length * 12L; // an id and a reference per slot
+    bytes += this.fastestRuns.getMemoryBytes() + this.longestRuns.getMemoryBytes() + this.records.getMemoryBytes();
+    bytes += this.textIndex.getMemoryBytes() + this.locationCounts.length * 4L;
+    bytes += (this.titles.values.length + this.locations.values.length) * 4L;
+    return bytes;
+  }
 
-    // if pace1 has a lower seconds number (faster)
-    if (Double.compare(pace1Seconds,pace2Seconds) < 0) {
-      return 1;
-    }
-    // if pace1 has a higher seconds number (slower)
-    if (Double.compare(pace1Seconds, pace2Seconds) > 0) {
-      return -1;
-    }
+  /**
+   * This method gets the total distance, time and amount of runs from the first date to the second date
+   * (inclusive) in O(log n)
+   * @param from the first date of the range
+   * @param to the last date of the range
+   * @return the totals of the runs in the range
+   */
+  public RunTotals.Total getTotal(LocalDate from, LocalDate to) {
+    return this.totals.getTotal(from, to);
+  }
 
-    return 0; // if code reaches here than both paces are equal
+  /**
+   * This method gets the amount of runs at the passed in location
+   * @param location the location of the runs
+   * @return the amount of runs at that location, 0 if there are none
+   */
+  public int getLocationCount(String location) {
+    int code = this.locations.codeOf(location);
+    return code >= 0 && code < this.locationCounts.length ? this.locationCounts[code] : 0;
   }
 
   /**
-   * This re-sets the fastestRun variable with the fastest run in the collection
+   * This method gets the amount of runs at every location. The counts are kept up to date as runs are added,
+   * removed and edited, so this only reads one count per location
+   * @return the amount of runs of every location with at least one run, sorted by location
    */
-  private void setFastest() {
-    if (this.getSize() == 0) {
-      this.fastestRun = null;
-      return;
-    }
-    // finds fastest run
-    Run max = this.runStorage.get(0);
-    for (int i = 0; i < this.getSize(); ++i) {
-      Run currRun = this.runStorage.get(i);
-      if (this.comparePace(max.paceOfRun, currRun.paceOfRun) < 0) {
-        max = runStorage.get(i);
+  public Map<String, Integer> getLocationCounts() {
+    TreeMap<String, Integer> counts = new TreeMap<>();
+    for (int code = 0; code < this.locationCounts.length; ++code) {
+      if (this.locationCounts[code] > 0) {
+        counts.put(this.locations.decode(code), this.locationCounts[code]);
       }
     }
-    this.fastestRun = max;
+    return counts;
   }
 
   /**
-   * This re-sets the longestRun variable with the fastest run in the collection
+   * This method gets the total distance, time and amount of runs at every location from the first date to the
+   * second date (inclusive). Every run keeps the code of its location, so the runs are grouped by adding them
+   * into arrays indexed by that code without hashing any String. Runs without a location are left out
+   * @param from the first date of the range
+   * @param to the last date of the range
+   * @return the totals of every location with a run in the range, sorted by location
    */
-  private void setLongest() {
-    if (this.getSize() == 0) {
-      this.fastestRun = null;
-      return;
+  public Map<String, RunTotals.Total> getLocationTotals(LocalDate from, LocalDate to) {
+    if (from == null || to == null) {
+      throw new IllegalArgumentException("Dates can not be null");
     }
-    // finds longest run 
-    Run max = this.runStorage.get(0);
-    for (int i = 0; i < this.getSize(); ++i) {
+    int codes = this.locationCounts.length;
+    double[] distance = new double[codes];
+    long[] seconds = new long[codes];
+    int[] count = new int[codes];
+    int high = this.upperBound(to);
+    for (int i = this.lowerBound(from); i < high; ++i) {
       Run currRun = this.runStorage.get(i);
-      if (currRun.distance > max.distance) {
-        max = runStorage.get(i);
+      int code = this.locationCode(currRun);
+      if (code >= 0) {
+        distance[code] += currRun.distance;
+        seconds[code] += currRun.timeRan.toSecondOfDay();
+        ++count[code];
+      }
+    }
+    TreeMap<String, RunTotals.Total> totals = new TreeMap<>();
+    for (int code = 0; code < codes; ++code) {
+      if (count[code] > 0) {
+        RunTotals.Total total = new RunTotals.Total();
+        total.distance = distance[code];
+        total.seconds = seconds[code];
+        total.count = count[code];
+        totals.put(this.locations.decode(code), total);
       }
     }
-    this.longestRun = max;
+    return totals;
+  }
+
+  /**
+   * This method gets the running totals of this collection, which can also be rolled up by week, month and year
+   * @return the totals field variable
+   */
+  public RunTotals getTotals() {
+    return this.totals;
+  }
+
+  /**
+   * This method takes a snapshot of every run in this collection as it is right now. Taking it only copies the
+   * table of segments of the sorted list, and the collection keeps changing at full speed while the snapshot is
+   * open: a segment is copied the first time it changes and an edited run is replaced by an edited copy, so the
+   * snapshot never sees a change. The snapshot can be read from another thread while this collection changes, and
+   * should be closed once it is no longer needed
+   * @return a read only snapshot of the runs, sorted by date
+   */
+  public RunStorageSnapshot snapshot() {
+    return new RunStorageSnapshot(this.runStorage.freeze(), this.runStorage);
+  }
 
+  /**
+   * This method gets the acute and chronic training load of this collection. The loads are only recomputed from
+   * the earliest date that changed since they were last read, so reading them writes to them, see TrainingLoad
+   * @return the trainingLoad field variable
+   */
+  public TrainingLoad getTrainingLoad() {
+    return this.trainingLoad;
+  }
+
+  /**
+   * This method gets the personal record (fastest run) of the passed in distance, like "5K" or "Marathon"
+   * @param name the name of the distance
+   * @return the fastest run of that distance, or null if there is none
+   * @throws IllegalArgumentException if there is no distance with that name
+   */
+  public Run getRecord(String name) {
+    return this.records.getRecord(name);
+  }
+
+  /**
+   * This method gets the personal record of every distance
+   * @return the name of every distance mapped to its fastest run (null if there is none)
+   */
+  public Map<String, Run> getRecords() {
+    return this.records.getRecords();
+  }
+
+  /**
+   * This method adds a distance to the personal records, every run from the minimum distance up to the maximum
+   * distance counts towards it
+   * @param name the name of the distance
+   * @param minDistance the shortest distance of a run that counts
+   * @param maxDistance the longest distance of a run that counts
+   */
+  public void addRecordDistance(String name, double minDistance, double maxDistance) {
+    this.records.addBucket(name, minDistance, maxDistance, this.runStorage);
+  }
+
+  /**
+   * this method gets the longest run stored in this collection
+   * @return The longest run, or null if there are no runs
+   */
+  public Run getLongest() {
+    return this.longestRuns.peek();
+  }
+
+  /**
+   * This method gets the Fastest run stored in this collection
+   * @return the fastest run, or null if there are no runs
+   */
+  public Run getFastest() {
+    return this.fastestRuns.peek();
+  }
+
+  /**
+   * This method compares two passed in Run Pace's in seconds per mile to see which one is faster
+   * @param pace1 the pace of a Run Object
+   * @param pace2 the pace of a second Run Object
+   * @return a positive int if pace1 is faster than pace2, 
+   * a negative int if pace1 is slower than pace2, and 0 if they are the same
+   */
+  static int comparePace(int pace1, int pace2) {
+    return Integer.compare(pace2, pace1); // a lower number of seconds per mile is faster
   }
 
 
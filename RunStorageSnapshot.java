@@ -0,0 +1,99 @@
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This class defines a read only, point in time view of the runs of a RunStorage, made by RunStorage.snapshot.
+ * The runs and their order never change, no matter what happens to the RunStorage after the snapshot was taken,
+ * so the snapshot can be read for as long as needed (even from another thread) without holding up changes to the
+ * RunStorage. A snapshot should be closed when it is done, until then the RunStorage copies what it changes
+ */
+public class RunStorageSnapshot implements AutoCloseable {
+
+  SegmentedRunList runs; // the frozen copy of the sorted list
+  SegmentedRunList source; // the list the copy was made from
+  AtomicBoolean closed = new AtomicBoolean(false);
+
+  /**
+   * Constructor for a snapshot of the passed in frozen list
+   * @param runs a frozen copy of the sorted list of a RunStorage
+   * @param source the list the copy was made from, released when the snapshot is closed
+   */
+  RunStorageSnapshot(SegmentedRunList runs, SegmentedRunList source) {
+    this.runs = runs;
+    this.source = source;
+  }
+
+  /**
+   * This method gets every run in the snapshot
+   * @return a read only list of every run, sorted by date
+   */
+  public List<Run> getRuns() {
+    return Collections.unmodifiableList(this.runs);
+  }
+
+  /**
+   * This method gets all the runs on the passed in date, in the order they were entered
+   * @param date the date of the runs
+   * @return a read only list of the runs on that date, empty if there are none
+   */
+  public List<Run> getRuns(LocalDate date) {
+    return this.getRuns(date, date);
+  }
+
+  /**
+   * This method gets all the runs from the first date to the second date (inclusive) sorted by date, both ends
+   * are found with a binary search
+   * @param from the first date of the range
+   * @param to the last date of the range
+   * @return a read only list of the runs in the range, empty if there are none
+   */
+  public List<Run> getRuns(LocalDate from, LocalDate to) {
+    if (from == null || to == null) {
+      throw new IllegalArgumentException("Dates can not be null");
+    }
+    int low = this.firstAfter(from, false);
+    int high = Math.max(low, this.firstAfter(to, true));
+    return Collections.unmodifiableList(this.runs.subList(low, high));
+  }
+
+  /**
+   * This method gets the amount of runs in the snapshot
+   * @return the amount of runs
+   */
+  public int getSize() {
+    return this.runs.size();
+  }
+
+  /**
+   * This method tells the RunStorage the snapshot is no longer used, so it can change its runs in place again.
+   * Closing a snapshot more than once does nothing, and the snapshot should not be read after it is closed
+   */
+  @Override
+  public void close() {
+    if (this.closed.compareAndSet(false, true)) {
+      this.source.release();
+    }
+  }
+
+  /**
+   * This private method finds the index of the first run after the passed in date (or on it, if inclusive is
+   * false) with a binary search
+   */
+  private int firstAfter(LocalDate date, boolean inclusive) {
+    int low = 0;
+    int high = this.runs.size();
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      int compare = this.runs.get(mid).runDate.compareTo(date);
+      if (compare < 0 || (inclusive && compare == 0)) {
+        low = mid + 1;
+      }
+      else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+}
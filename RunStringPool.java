@@ -0,0 +1,137 @@
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * This class defines a dictionary of Strings. Every distinct String that is added gets a small int code, so a
+ * collection of runs can store the code instead of its own copy of the String. Equal Strings all share the one
+ * copy kept by the pool, which encode and intern hand back.
+ *
+ * Every RunStorage keeps its own pools, so the Strings of a log are let go together with the log. Encoding is
+ * synchronized so a pool can be read while it is written. Decoding takes no lock, a code should be passed between
+ * threads the same way the run that holds it is (under a lock like ConcurrentRunStorage does)
+ */
+public class RunStringPool {
+
+  static final int NO_STRING = -1; // the code of a null String
+  static final int NOT_POOLED = -2; // the code of a String that was not added because the pool is full
+
+  HashMap<String, Integer> codes = new HashMap<>(); // the code of every String in the pool
+  volatile String[] values = new String[16]; // the String of every code, index == code
+  volatile int size = 0;
+  final int maxSize; // the most Strings the pool holds, encode returns NOT_POOLED for new Strings after that
+
+  /**
+   * Constructor for a pool without a limit on the amount of Strings
+   */
+  public RunStringPool() {
+    this(Integer.MAX_VALUE);
+  }
+
+  /**
+   * Constructor for a pool that holds at most the passed in amount of Strings
+   * @param maxSize the most Strings the pool holds
+   */
+  RunStringPool(int maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * This method gets the code of the passed in String, adding the String to the pool if it is not there yet
+   * @param value the String to encode
+   * @return the code of the String, NO_STRING if the String is null or NOT_POOLED if the pool is full
+   */
+  public synchronized int encode(String value) {
+    if (value == null) {
+      return NO_STRING;
+    }
+    Integer code = this.codes.get(value);
+    if (code == null) {
+      if (this.size == this.maxSize) {
+        return NOT_POOLED;
+      }
+      code = this.size;
+      if (code == this.values.length) {
+        this.values = Arrays.copyOf(this.values, code * 2);
+      }
+      this.values[code] = value;
+      this.codes.put(value, code);
+      this.size = code + 1; // written last, so a code below the size always has its String
+    }
+    return code;
+  }
+
+  /**
+   * This method gets the code of the passed in String when the code it had before is known. If the known code
+   * is still the code of that exact String object it is returned without looking the String up
+   * @param value the String to encode
+   * @param knownCode the code the String had before, or any code if it is not known
+   * @return the code of the String, NO_STRING if the String is null or NOT_POOLED if the pool is full
+   */
+  int encode(String value, int knownCode) {
+    if (value == null) {
+      return NO_STRING;
+    }
+    if (knownCode >= 0 && knownCode < this.size && this.values[knownCode] == value) {
+      return knownCode;
+    }
+    return this.encode(value);
+  }
+
+  /**
+   * This method gets the code of the passed in String without adding it to the pool
+   * @param value the String to look for
+   * @return the code of the String, or NO_STRING if the String is null or not in the pool
+   */
+  public synchronized int codeOf(String value) {
+    Integer code = value == null ? null : this.codes.get(value);
+    return code == null ? NO_STRING : code;
+  }
+
+  /**
+   * This method gets the code of the passed in String without adding it to the pool, when the code it had in some
+   * pool is known. The known code is only used if it is the code of that exact String object in this pool, so a
+   * code that was given by another pool is looked up again instead of being trusted
+   * @param value the String to look for
+   * @param knownCode the code the String had before, or any code if it is not known
+   * @return the code of the String, or NO_STRING if the String is null or not in the pool
+   */
+  int codeOf(String value, int knownCode) {
+    if (value == null) {
+      return NO_STRING;
+    }
+    if (knownCode >= 0 && knownCode < this.size && this.values[knownCode] == value) {
+      return knownCode;
+    }
+    return this.codeOf(value);
+  }
+
+  /**
+   * This method gets the String of the passed in code
+   * @param code a code returned by encode
+   * @return the String of the code, or null if the code is NO_STRING or NOT_POOLED
+   */
+  public String decode(int code) {
+    if (code < 0) {
+      return null;
+    }
+    return this.values[code];
+  }
+
+  /**
+   * This method gets the copy of the passed in String that is kept by the pool, adding it if it is not there yet
+   * @param value the String to look up
+   * @return the pooled String equal to the passed in String, or the passed in String if the pool is full
+   */
+  public String intern(String value) {
+    int code = this.encode(value);
+    return code == NOT_POOLED ? value : this.decode(code);
+  }
+
+  /**
+   * This method gets the amount of distinct Strings in this pool, every code is below it
+   * @return the amount of Strings
+   */
+  public int getSize() {
+    return this.size;
+  }
+}
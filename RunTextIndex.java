@@ -0,0 +1,613 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * This class defines an inverted index over the title, location and description of runs, so runs can be found by
+ * the words in them without looking at every run. Every run with any text gets an int id, and every word of every
+ * field maps to a sorted list of the ids of the runs that have it (a posting list), keyed as field:word in a
+ * sorted map so words that start with a prefix are next to each other. Runs without any text are not in the index.
+ * New runs get the highest id so far, and once half the ids belong to runs that are gone the ids are renumbered in
+ * order so the arrays stay as large as the runs in the index.
+ *
+ * A query is words separated by spaces, all of which have to match (AND). OR between words starts another group
+ * of words, and runs that match any group are found. A word can be limited to one field (title:tempo) and a word
+ * that ends with * matches every word that starts with it (lake*)
+ */
+public class RunTextIndex {
+
+  static final int TITLE = 0;
+  static final int LOCATION = 1;
+  static final int DESCRIPTION = 2;
+  static final String[] FIELDS = {"title", "location", "description"};
+  // estimated bytes of a word in the index besides its characters and ids: the map entry, key and posting list
+  static final int BYTES_PER_TERM = 112;
+  static final int BYTES_PER_RUN = 36; // estimated bytes of the entry and boxed id of a run in ids
+
+  TreeMap<String, Postings> terms = new TreeMap<>(); // field:word mapped to the ids of the runs that have it
+  IdentityHashMap<Run, Integer> ids = new IdentityHashMap<>(); // the id of every run in the index
+  Run[] runs = new Run[16]; // the run of every id, null once the run is gone
+  int nextId = 0; // new ids are always the highest, until the ids are renumbered
+  long termBytes = 0; // estimated bytes of the words and their posting lists
+
+  /**
+   * This method adds the words of the passed in run to the index
+   * @param toAdd a run that is not in the index yet
+   */
+  void add(Run toAdd) {
+    for (int field = 0; field < FIELDS.length; ++field) {
+      this.addWords(toAdd, field, tokens(text(toAdd, field)));
+    }
+  }
+
+  /**
+   * This method adds the words of every passed in run to the index
+   * @param toAdd runs that are not in the index yet
+   */
+  void addAll(Collection<Run> toAdd) {
+    for (Run run : toAdd) {
+      this.add(run);
+    }
+  }
+
+  /**
+   * This method takes the passed in run out of the index
+   * @param toRemove a run that was removed from the log
+   */
+  void remove(Run toRemove) {
+    Integer id = this.ids.remove(toRemove);
+    if (id == null) {
+      return;
+    }
+    for (int field = 0; field < FIELDS.length; ++field) {
+      for (String word : tokens(text(toRemove, field))) {
+        this.removePosting(FIELDS[field] + ':' + word, id);
+      }
+    }
+    this.runs[id] = null;
+    if (this.ids.size() < this.nextId / 4) {
+      this.renumber(); // most ids belong to runs that are gone
+    }
+  }
+
+  /**
+   * This method puts the passed in copy in the place of a run, used when a run is copied before it is edited.
+   * The copy has the same text, so it keeps the id of the run
+   * @param toReplace the run in the index
+   * @param replacement its copy
+   */
+  void replace(Run toReplace, Run replacement) {
+    Integer id = this.ids.remove(toReplace);
+    if (id != null) {
+      this.ids.put(replacement, id);
+      this.runs[id] = replacement;
+    }
+  }
+
+  /**
+   * This method updates the index after one field of the passed in run changed, only the words that were added or
+   * removed are changed in the index
+   * @param edited the run that was edited
+   * @param field TITLE, LOCATION or DESCRIPTION
+   * @param oldText the text of the field before it was changed
+   */
+  void changed(Run edited, int field, String oldText) {
+    List<String> oldWords = tokens(oldText);
+    List<String> newWords = tokens(text(edited, field));
+    Integer id = this.ids.get(edited);
+    if (id != null) {
+      for (String word : oldWords) {
+        if (!newWords.contains(word)) {
+          this.removePosting(FIELDS[field] + ':' + word, id);
+        }
+      }
+    }
+    ArrayList<String> added = new ArrayList<>();
+    for (String word : newWords) {
+      if (!oldWords.contains(word)) {
+        added.add(word);
+      }
+    }
+    this.addWords(edited, field, added);
+    // a run that no longer has any text leaves the index
+    if (id != null && tokens(text(edited, TITLE)).isEmpty() && tokens(text(edited, LOCATION)).isEmpty()
+        && tokens(text(edited, DESCRIPTION)).isEmpty()) {
+      this.ids.remove(edited);
+      this.runs[id] = null;
+    }
+  }
+
+  /**
+   * This method finds every run that matches the passed in query. The posting lists of the words are read where
+   * they are, only the ids that match are copied
+   * @param query words to look for, see the description of this class
+   * @return the matching runs sorted by date, empty if there are none
+   */
+  List<Run> search(String query) {
+    if (query == null || query.isBlank()) {
+      throw new IllegalArgumentException("Search can not be empty");
+    }
+    Postings matches = new Postings();
+    ArrayList<Postings> group = new ArrayList<>();
+    for (String word : query.trim().split("\\s+")) {
+      if (word.equals("OR")) {
+        matches = union(matches, intersect(group));
+        group.clear();
+      }
+      else {
+        this.addWordPostings(word, group);
+      }
+    }
+    matches = union(matches, intersect(group));
+
+    ArrayList<Run> found = new ArrayList<>(matches.size - matches.removed);
+    for (int i = 0; i < matches.size; ++i) {
+      if (!Postings.isRemoved(matches.ids[i])) {
+        found.add(this.runs[Postings.idOf(matches.ids[i])]);
+      }
+    }
+    Collections.sort(found); // stable, so runs on the same day stay in the order they got their ids
+    return found;
+  }
+
+  /**
+   * This method gets the amount of runs in the index
+   * @return the amount of runs with any text
+   */
+  int getSize() {
+    return this.ids.size();
+  }
+
+  /**
+   * This method estimates the memory the index takes up: its words, their posting lists, the run of every id and
+   * the id of every run
+   * @return the estimated size in bytes
+   */
+  long getMemoryBytes() {
+    return this.termBytes + this.runs.length * 4L + (long) this.ids.size() * BYTES_PER_RUN;
+  }
+
+  /**
+   * This private method adds the posting lists one word of a query has to match to the passed in group. A word
+   * can become more than one word once it is split up, like half-marathon, and each of them has to match. A word
+   * with one posting list adds that list itself, only words with more than one list get a merged copy
+   */
+  private void addWordPostings(String word, List<Postings> group) {
+    int field = -1;
+    int colon = word.indexOf(':');
+    if (colon > 0) {
+      field = Arrays.asList(FIELDS).indexOf(word.substring(0, colon).toLowerCase());
+      if (field == -1) {
+        throw new IllegalArgumentException("Unknown field " + word.substring(0, colon));
+      }
+      word = word.substring(colon + 1);
+    }
+    boolean prefix = word.endsWith("*");
+    List<String> words = tokens(prefix ? word.substring(0, word.length() - 1) : word);
+    if (words.isEmpty()) {
+      if (prefix) {
+        throw new IllegalArgumentException("A prefix needs at least one letter or digit");
+      }
+      return; // only punctuation, matches nothing more
+    }
+    for (int i = 0; i < words.size(); ++i) {
+      // only the last part of a split up word is a prefix, like half-mar*
+      boolean isPrefix = prefix && i == words.size() - 1;
+      ArrayList<Postings> lists = new ArrayList<>();
+      for (int f = 0; f < FIELDS.length; ++f) {
+        if (field != -1 && field != f) {
+          continue;
+        }
+        String key = FIELDS[f] + ':' + words.get(i);
+        if (isPrefix) {
+          lists.addAll(this.terms.subMap(key, key + Character.MAX_VALUE).values());
+        }
+        else {
+          Postings postings = this.terms.get(key);
+          if (postings != null) {
+            lists.add(postings);
+          }
+        }
+      }
+      group.add(lists.size() == 1 ? lists.get(0) : unionAll(lists));
+    }
+  }
+
+  /**
+   * This private method adds the passed in words of a field of a run to the index, giving the run an id first
+   * if it does not have one
+   */
+  private void addWords(Run run, int field, List<String> words) {
+    if (words.isEmpty()) {
+      return;
+    }
+    Integer id = this.ids.get(run);
+    if (id == null) {
+      if (this.nextId == this.runs.length) {
+        if (this.ids.size() <= this.nextId / 2) {
+          this.renumber(); // half the ids belong to runs that are gone, so they are taken back instead
+        }
+        else {
+          this.runs = Arrays.copyOf(this.runs, this.runs.length * 2);
+        }
+      }
+      id = this.nextId++;
+      this.runs[id] = run;
+      this.ids.put(run, id);
+    }
+    for (String word : words) {
+      String key = FIELDS[field] + ':' + word;
+      Postings postings = this.terms.get(key);
+      if (postings == null) {
+        postings = new Postings();
+        this.terms.put(key, postings);
+        this.termBytes += BYTES_PER_TERM + key.length() + postings.ids.length * 4L;
+      }
+      int capacity = postings.ids.length;
+      postings.add(id);
+      this.termBytes += (postings.ids.length - capacity) * 4L;
+    }
+  }
+
+  /**
+   * This private method takes an id out of the posting list of a word, and the word out of the index once no run
+   * has it
+   */
+  private void removePosting(String key, int id) {
+    Postings postings = this.terms.get(key);
+    if (postings == null) {
+      return;
+    }
+    int capacity = postings.ids.length;
+    if (postings.remove(id)) {
+      this.termBytes += (postings.ids.length - capacity) * 4L;
+      if (postings.size == 0) {
+        this.terms.remove(key);
+        this.termBytes -= BYTES_PER_TERM + key.length() + postings.ids.length * 4L;
+      }
+    }
+  }
+
+  /**
+   * This private method gives the runs in the index the ids 0, 1, 2... in the order of their old ids, so the ids
+   * of runs that are gone can be used again. The order is kept, so every posting list stays sorted and is
+   * renumbered in one pass over it. Runs O(runs + ids in the posting lists), at most once for every runs / 2 runs
+   * that left the index
+   */
+  private void renumber() {
+    int[] newIds = new int[this.nextId];
+    int count = 0;
+    for (int id = 0; id < this.nextId; ++id) {
+      if (this.runs[id] != null) {
+        newIds[id] = count;
+        this.runs[count++] = this.runs[id];
+      }
+      else {
+        newIds[id] = -1;
+      }
+    }
+    Arrays.fill(this.runs, count, this.nextId, null);
+    this.nextId = count;
+    if (this.runs.length > 16 && count < this.runs.length / 4) {
+      this.runs = Arrays.copyOf(this.runs, Math.max(16, count * 2));
+    }
+    for (Map.Entry<Run, Integer> entry : this.ids.entrySet()) {
+      entry.setValue(newIds[entry.getValue()]);
+    }
+    for (Postings postings : this.terms.values()) {
+      int capacity = postings.ids.length;
+      postings.renumber(newIds);
+      this.termBytes += (postings.ids.length - capacity) * 4L;
+    }
+  }
+
+  /**
+   * This method splits text into lower case words of letters and digits, each word is in the list once
+   * @param text the text to split, can be null
+   * @return the words in the order they first show up
+   */
+  static List<String> tokens(String text) {
+    if (text == null) {
+      return Collections.emptyList();
+    }
+    ArrayList<String> words = new ArrayList<>();
+    StringBuilder word = new StringBuilder();
+    for (int i = 0; i <= text.length(); ++i) {
+      char c = i < text.length() ? text.charAt(i) : ' ';
+      if (Character.isLetterOrDigit(c)) {
+        word.append(Character.toLowerCase(c));
+      }
+      else if (word.length() > 0) {
+        String token = word.toString();
+        if (!words.contains(token)) {
+          words.add(token);
+        }
+        word.setLength(0);
+      }
+    }
+    return words;
+  }
+
+  /**
+   * This private method gets the text of one field of a run
+   */
+  private static String text(Run run, int field) {
+    if (field == TITLE) {
+      return run.getTitle();
+    }
+    return field == LOCATION ? run.getLocation() : run.getDescription();
+  }
+
+  /**
+   * This private method gets the ids that are in every passed in posting list. The list with the fewest ids is
+   * walked and every other list is searched from where the last id was found, so a short list against a long one
+   * only looks at a few ids of the long one. The lists are read in place, a single list is returned as it is
+   */
+  private static Postings intersect(List<Postings> lists) {
+    if (lists.isEmpty()) {
+      return new Postings();
+    }
+    ArrayList<Postings> sorted = new ArrayList<>(lists);
+    sorted.sort((list1, list2) -> Integer.compare(list1.size - list1.removed, list2.size - list2.removed));
+    Postings result = sorted.get(0);
+    for (int i = 1; i < sorted.size() && result.size > result.removed; ++i) {
+      Postings other = sorted.get(i);
+      int[] kept = new int[result.size - result.removed];
+      int count = 0;
+      int from = 0;
+      for (int j = 0; j < result.size; ++j) {
+        int entry = result.ids[j];
+        if (Postings.isRemoved(entry)) {
+          continue;
+        }
+        from = other.gallop(from, Postings.idOf(entry));
+        if (from == other.size) {
+          break;
+        }
+        if (other.ids[from] == entry) { // the same id, and not removed from the other list either
+          kept[count++] = entry;
+        }
+      }
+      result = new Postings(kept, count);
+    }
+    return result;
+  }
+
+  /**
+   * This private method gets the ids that are in any of the passed in posting lists, sorted and without repeats
+   */
+  private static Postings unionAll(List<Postings> lists) {
+    if (lists.size() <= 4) {
+      Postings result = new Postings();
+      for (Postings list : lists) {
+        result = union(result, list);
+      }
+      return result;
+    }
+    // a short prefix can match a lot of words, so every id is sorted once instead of merging list after list
+    int total = 0;
+    for (Postings list : lists) {
+      total += list.size - list.removed;
+    }
+    int[] all = new int[total];
+    int copied = 0;
+    for (Postings list : lists) {
+      for (int i = 0; i < list.size; ++i) {
+        if (!Postings.isRemoved(list.ids[i])) {
+          all[copied++] = list.ids[i];
+        }
+      }
+    }
+    Arrays.sort(all);
+    int count = 0;
+    for (int i = 0; i < all.length; ++i) {
+      if (count == 0 || all[count - 1] != all[i]) {
+        all[count++] = all[i];
+      }
+    }
+    return new Postings(all, count);
+  }
+
+  /**
+   * This private method merges two posting lists into one sorted list without repeats or removed ids. An empty
+   * list gives back the other list as it is
+   */
+  private static Postings union(Postings list1, Postings list2) {
+    if (list1.size == list1.removed) {
+      return list2;
+    }
+    if (list2.size == list2.removed) {
+      return list1;
+    }
+    int[] merged = new int[list1.size - list1.removed + list2.size - list2.removed];
+    int i = 0;
+    int j = 0;
+    int count = 0;
+    while (i < list1.size || j < list2.size) {
+      if (i < list1.size && Postings.isRemoved(list1.ids[i])) {
+        ++i;
+      }
+      else if (j < list2.size && Postings.isRemoved(list2.ids[j])) {
+        ++j;
+      }
+      else if (j == list2.size || (i < list1.size && list1.ids[i] < list2.ids[j])) {
+        merged[count++] = list1.ids[i++];
+      }
+      else if (i == list1.size || list2.ids[j] < list1.ids[i]) {
+        merged[count++] = list2.ids[j++];
+      }
+      else {
+        merged[count++] = list1.ids[i++];
+        ++j;
+      }
+    }
+    return new Postings(merged, count);
+  }
+
+  /**
+   * This class holds the sorted ids of the runs that have one word. New runs get the highest id so far, so ids
+   * are almost always added at the end. Each id is kept shifted left by one, and removing an id only sets the
+   * lowest bit after a binary search, so the list stays sorted. The removed ids are dropped in one pass once they
+   * are half the list, which costs O(1) per remove over time
+   */
+  static class Postings {
+
+    int[] ids; // the ids shifted left by one, the lowest bit is set once the id was removed
+    int size; // the amount of ids, removed ones included
+    int removed = 0; // the amount of removed ids still in the list
+
+    /**
+     * Constructor for an empty list
+     */
+    Postings() {
+      this(new int[4], 0);
+    }
+
+    /**
+     * Constructor for a list of the passed in shifted ids, which are sorted and not removed
+     * @param ids the shifted ids
+     * @param size the amount of ids in the array
+     */
+    Postings(int[] ids, int size) {
+      this.ids = ids;
+      this.size = size;
+    }
+
+    /**
+     * This method adds the passed in id, keeping the ids sorted
+     * @param id the id of a run, added only if it is not in the list
+     */
+    void add(int id) {
+      int index = this.size == 0 || idOf(this.ids[this.size - 1]) < id ? -this.size - 1 : this.indexOf(id);
+      if (index >= 0) {
+        if (isRemoved(this.ids[index])) {
+          this.ids[index] = id << 1; // was removed before, so it is added back in place
+          --this.removed;
+        }
+        return;
+      }
+      index = -index - 1;
+      if (this.size == this.ids.length) {
+        this.ids = Arrays.copyOf(this.ids, this.size * 2);
+      }
+      System.arraycopy(this.ids, index, this.ids, index + 1, this.size - index);
+      this.ids[index] = id << 1;
+      ++this.size;
+    }
+
+    /**
+     * This method removes the passed in id
+     * @param id the id of a run
+     * @return true if it was in the list
+     */
+    boolean remove(int id) {
+      int index = this.indexOf(id);
+      if (index < 0 || isRemoved(this.ids[index])) {
+        return false;
+      }
+      this.ids[index] |= 1;
+      ++this.removed;
+      if (this.removed * 2 > this.size) {
+        this.renumber(null);
+      }
+      return true;
+    }
+
+    /**
+     * This method drops the removed ids and gives every other id the id in the passed in array at its index, so
+     * the array has to keep the order of the ids. An id whose new id is -1 is dropped too. The array shrinks if it
+     * is mostly empty after
+     * @param newIds the new id of every id, or null to keep the ids
+     */
+    void renumber(int[] newIds) {
+      int count = 0;
+      for (int i = 0; i < this.size; ++i) {
+        int entry = this.ids[i];
+        if (isRemoved(entry)) {
+          continue;
+        }
+        int id = newIds == null ? idOf(entry) : newIds[idOf(entry)];
+        if (id != -1) {
+          this.ids[count++] = id << 1;
+        }
+      }
+      this.size = count;
+      this.removed = 0;
+      if (this.ids.length > 4 && count < this.ids.length / 4) {
+        this.ids = Arrays.copyOf(this.ids, Math.max(4, count * 2));
+      }
+    }
+
+    /**
+     * This method finds the first index at or after from that holds an id of at least the passed in id, by
+     * doubling the step until it passes the id and then searching back with a binary search
+     * @param from the index to start at
+     * @param id the id to look for
+     * @return the index, or size if every id from there on is lower
+     */
+    int gallop(int from, int id) {
+      int step = 1;
+      int high = from;
+      while (high < this.size && idOf(this.ids[high]) < id) {
+        from = high + 1;
+        high += step;
+        step <<= 1;
+      }
+      int index = this.binarySearch(from, Math.min(high + 1, this.size), id);
+      return index >= 0 ? index : -index - 1;
+    }
+
+    /**
+     * This private method finds the index of the passed in id, or -(the index it would be at) - 1
+     */
+    private int indexOf(int id) {
+      return this.binarySearch(0, this.size, id);
+    }
+
+    /**
+     * This private method searches the ids from low (inclusive) to high (exclusive) like Arrays.binarySearch,
+     * whether the id was removed or not
+     */
+    private int binarySearch(int low, int high, int id) {
+      --high;
+      while (low <= high) {
+        int mid = (low + high) >>> 1;
+        int midId = idOf(this.ids[mid]);
+        if (midId < id) {
+          low = mid + 1;
+        }
+        else if (midId > id) {
+          high = mid - 1;
+        }
+        else {
+          return mid;
+        }
+      }
+      return -low - 1;
+    }
+
+    /**
+     * This method gets the id kept in an entry of the list
+     * @param entry the shifted id
+     * @return the id
+     */
+    static int idOf(int entry) {
+      return entry >>> 1;
+    }
+
+    /**
+     * This method tells if an entry of the list was removed
+     * @param entry the shifted id
+     * @return true if the id was removed
+     */
+    static boolean isRemoved(int entry) {
+      return (entry & 1) != 0;
+    }
+  }
+
+}
@@ -0,0 +1,376 @@
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.temporal.TemporalAdjusters;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class keeps the total distance, time and amount of runs of every day in Fenwick trees (binary indexed
+ * trees), so the totals of any range of dates are found in O(log n) instead of adding up every run in the range.
+ * The days are split into chunks of CHUNK_DAYS days and only chunks with runs are kept, each with its own trees
+ * over its days, and one more set of trees sums up the chunks. A run dated far away from the others only adds one
+ * small chunk instead of growing the trees over every day in between
+ */
+public class RunTotals {
+
+  static final int CHUNK_DAYS = 256; // the days in one chunk, a power of two
+  static final int REBUILD_SIZE = 64; // batches of at least this many runs rebuild the trees instead of updating
+
+  Chunk[] chunks = new Chunk[4]; // the chunks with runs, sorted by their first day
+  int chunkCount = 0;
+  // Fenwick trees over the totals of each chunk, index i holds the totals of the (i & -i) chunks ending at chunk i - 1
+  double[] chunkDistanceTree = new double[1];
+  long[] chunkSecondsTree = new long[1];
+  int[] chunkCountTree = new int[1];
+  int lastChunk = 0; // the index of the chunk used last, runs are often added close to each other
+
+  /**
+   * adds the passed in run to the totals of its date
+   * @param toAdd the run to add
+   */
+  void add(Run toAdd) {
+    this.update(toAdd.runDate.toEpochDay(), toAdd.distance, toAdd.timeRan.toSecondOfDay(), 1);
+  }
+
+  /**
+   * adds all the passed in runs to the totals. A large batch is added to the day totals and the trees of every
+   * changed chunk are rebuilt once in O(CHUNK_DAYS) instead of updating them for every run
+   * @param toAdd the runs to add
+   */
+  void addAll(List<Run> toAdd) {
+    if (toAdd.size() < REBUILD_SIZE) {
+      for (int i = 0; i < toAdd.size(); ++i) {
+        this.add(toAdd.get(i));
+      }
+      return;
+    }
+    for (int i = 0; i < toAdd.size(); ++i) {
+      Run currRun = toAdd.get(i);
+      long day = currRun.runDate.toEpochDay();
+      int chunkIndex = this.chunkOf(day); // may grow the chunks array, so it is read after
+      Chunk chunk = this.chunks[chunkIndex];
+      int index = (int) (day - chunk.firstDay);
+      int seconds = currRun.timeRan.toSecondOfDay();
+      chunk.dayDistance[index] += currRun.distance;
+      chunk.daySeconds[index] += seconds;
+      ++chunk.dayCount[index];
+      chunk.distance += currRun.distance;
+      chunk.seconds += seconds;
+      ++chunk.count;
+      chunk.changed = true;
+    }
+    for (int i = 0; i < this.chunkCount; ++i) {
+      if (this.chunks[i].changed) {
+        this.chunks[i].rebuild();
+      }
+    }
+    this.rebuildChunkTrees();
+  }
+
+  /**
+   * removes the passed in run from the totals of its date
+   * @param toRemove a run that was added to the totals
+   */
+  void remove(Run toRemove) {
+    this.update(toRemove.runDate.toEpochDay(), -toRemove.distance, -toRemove.timeRan.toSecondOfDay(), -1);
+  }
+
+  /**
+   * updates the total time of the date of the passed in run after its time was changed
+   * @param toUpdate a run that was added to the totals
+   * @param oldSeconds the time of the run in seconds before it was changed
+   */
+  void timeChanged(Run toUpdate, int oldSeconds) {
+    this.update(toUpdate.runDate.toEpochDay(), 0, toUpdate.timeRan.toSecondOfDay() - oldSeconds, 0);
+  }
+
+  /**
+   * This method gets the totals of every run from the first date to the second date (inclusive)
+   * @param from the first date of the range
+   * @param to the last date of the range
+   * @return the totals of the runs in the range
+   */
+  public Total getTotal(LocalDate from, LocalDate to) {
+    if (from == null || to == null) {
+      throw new IllegalArgumentException("Dates can not be null");
+    }
+    Total total = new Total();
+    if (this.chunkCount == 0 || to.isBefore(from)) {
+      return total;
+    }
+    // the totals up to the last day minus the totals before the first day
+    this.addPrefix(total, to.toEpochDay(), 1);
+    this.addPrefix(total, from.toEpochDay() - 1, -1);
+    return total;
+  }
+
+  /**
+   * This method gets the totals of the week (Monday to Sunday) the passed in date is in
+   * @param date any date in the week
+   * @return the totals of the runs in the week
+   */
+  public Total getWeek(LocalDate date) {
+    LocalDate monday = date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+    return this.getTotal(monday, monday.plusDays(6));
+  }
+
+  /**
+   * This method gets the totals of the passed in month
+   * @param year the year of the month
+   * @param month the month, from 1 (January) to 12 (December)
+   * @return the totals of the runs in the month
+   */
+  public Total getMonth(int year, int month) {
+    YearMonth yearMonth = YearMonth.of(year, month);
+    return this.getTotal(yearMonth.atDay(1), yearMonth.atEndOfMonth());
+  }
+
+  /**
+   * This method gets the totals of the passed in year
+   * @param year the year
+   * @return the totals of the runs in the year
+   */
+  public Total getYear(int year) {
+    return this.getTotal(LocalDate.of(year, 1, 1), LocalDate.of(year, 12, 31));
+  }
+
+  /**
+   * This method finds the last chunk that starts on or before the passed in epoch day
+   * @param day the epoch day
+   * @return the index of the chunk, or -1 if every chunk starts after the day
+   */
+  int chunkAtOrBefore(long day) {
+    int low = 0;
+    int high = this.chunkCount;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (this.chunks[mid].firstDay <= day) {
+        low = mid + 1;
+      }
+      else {
+        high = mid;
+      }
+    }
+    return low - 1;
+  }
+
+  /**
+   * This method gets the amount of bytes the arrays of these totals take up
+   * @return the size of the chunks and trees in bytes
+   */
+  long getMemoryBytes() {
+    return (long) this.chunkCount * Chunk.BYTES + this.chunks.length * 8L + this.chunkDistanceTree.length * 20L;
+  }
+
+  /**
+   * This private method adds the totals of every day on or before the passed in epoch day to the passed in total,
+   * or subtracts them if sign is -1
+   */
+  private void addPrefix(Total total, long day, int sign) {
+    int index = this.chunkAtOrBefore(day);
+    if (index == -1) {
+      return;
+    }
+    // every chunk before the chunk of the day
+    double distance = 0;
+    long seconds = 0;
+    int count = 0;
+    for (int i = index; i > 0; i -= i & -i) {
+      distance += this.chunkDistanceTree[i];
+      seconds += this.chunkSecondsTree[i];
+      count += this.chunkCountTree[i];
+    }
+    // the days of its chunk up to the day
+    Chunk chunk = this.chunks[index];
+    for (int i = (int) Math.min(day - chunk.firstDay + 1, CHUNK_DAYS); i > 0; i -= i & -i) {
+      distance += chunk.distanceTree[i];
+      seconds += chunk.secondsTree[i];
+      count += chunk.countTree[i];
+    }
+    total.distance += sign * distance;
+    total.seconds += sign * seconds;
+    total.count += sign * count;
+  }
+
+  /**
+   * This private method adds the passed in amounts to a day, to every tree node of its chunk that covers that day
+   * and to every tree node that covers its chunk
+   */
+  private void update(long day, double distance, long seconds, int count) {
+    int index = this.chunkOf(day);
+    Chunk chunk = this.chunks[index];
+    int dayIndex = (int) (day - chunk.firstDay);
+    chunk.dayDistance[dayIndex] += distance;
+    chunk.daySeconds[dayIndex] += seconds;
+    chunk.dayCount[dayIndex] += count;
+    for (int i = dayIndex + 1; i <= CHUNK_DAYS; i += i & -i) {
+      chunk.distanceTree[i] += distance;
+      chunk.secondsTree[i] += seconds;
+      chunk.countTree[i] += count;
+    }
+    chunk.distance += distance;
+    chunk.seconds += seconds;
+    chunk.count += count;
+    for (int i = index + 1; i <= this.chunkCount; i += i & -i) {
+      this.chunkDistanceTree[i] += distance;
+      this.chunkSecondsTree[i] += seconds;
+      this.chunkCountTree[i] += count;
+    }
+  }
+
+  /**
+   * This private method gets the index of the chunk of the passed in epoch day, adding the chunk if there is none
+   * yet. Adding a chunk rebuilds the trees over the chunks in O(chunks), which only happens for the first run in
+   * CHUNK_DAYS days
+   */
+  private int chunkOf(long day) {
+    if (this.lastChunk < this.chunkCount) {
+      Chunk last = this.chunks[this.lastChunk];
+      if (day >= last.firstDay && day < last.firstDay + CHUNK_DAYS) {
+        return this.lastChunk;
+      }
+    }
+    int index = this.chunkAtOrBefore(day);
+    if (index == -1 || day >= this.chunks[index].firstDay + CHUNK_DAYS) {
+      // the chunk goes after the last chunk that starts before the day
+      ++index;
+      if (this.chunkCount == this.chunks.length) {
+        this.chunks = Arrays.copyOf(this.chunks, this.chunkCount * 2);
+      }
+      System.arraycopy(this.chunks, index, this.chunks, index + 1, this.chunkCount - index);
+      this.chunks[index] = new Chunk(Math.floorDiv(day, CHUNK_DAYS) * CHUNK_DAYS);
+      ++this.chunkCount;
+      this.rebuildChunkTrees();
+    }
+    this.lastChunk = index;
+    return index;
+  }
+
+  /**
+   * This private method builds the trees over the chunks from the chunk totals in O(chunks)
+   */
+  private void rebuildChunkTrees() {
+    if (this.chunkDistanceTree.length != this.chunkCount + 1) {
+      this.chunkDistanceTree = new double[this.chunkCount + 1];
+      this.chunkSecondsTree = new long[this.chunkCount + 1];
+      this.chunkCountTree = new int[this.chunkCount + 1];
+    }
+    else {
+      Arrays.fill(this.chunkDistanceTree, 0);
+      Arrays.fill(this.chunkSecondsTree, 0);
+      Arrays.fill(this.chunkCountTree, 0);
+    }
+    for (int i = 1; i <= this.chunkCount; ++i) {
+      Chunk chunk = this.chunks[i - 1];
+      this.chunkDistanceTree[i] += chunk.distance;
+      this.chunkSecondsTree[i] += chunk.seconds;
+      this.chunkCountTree[i] += chunk.count;
+      int parent = i + (i & -i);
+      if (parent <= this.chunkCount) {
+        this.chunkDistanceTree[parent] += this.chunkDistanceTree[i];
+        this.chunkSecondsTree[parent] += this.chunkSecondsTree[i];
+        this.chunkCountTree[parent] += this.chunkCountTree[i];
+      }
+    }
+  }
+
+  /**
+   * This class holds the day totals of CHUNK_DAYS days in a row and the Fenwick trees over them. TrainingLoad keeps
+   * the loads of the same days next to them
+   */
+  static class Chunk {
+    // the bytes of the arrays of a chunk, including the loads
+    static final long BYTES = CHUNK_DAYS * (8L + 8 + 4) * 2 + CHUNK_DAYS * 16L + 128;
+
+    final long firstDay; // the epoch day of index 0, a multiple of CHUNK_DAYS
+    // the totals of each day, index 0 is firstDay
+    double[] dayDistance = new double[CHUNK_DAYS];
+    long[] daySeconds = new long[CHUNK_DAYS];
+    int[] dayCount = new int[CHUNK_DAYS];
+    // Fenwick trees over the day totals, index i holds the totals of the (i & -i) days ending at day i - 1
+    double[] distanceTree = new double[CHUNK_DAYS + 1];
+    long[] secondsTree = new long[CHUNK_DAYS + 1];
+    int[] countTree = new int[CHUNK_DAYS + 1];
+    // the totals of the whole chunk
+    double distance = 0;
+    long seconds = 0;
+    int count = 0;
+    boolean changed = false; // true while the trees are missing day totals added by a batch
+    // the acute and chronic load at the end of each day, made and kept up to date by TrainingLoad
+    double[] acute;
+    double[] chronic;
+
+    /**
+     * Constructor for an empty chunk starting at the passed in epoch day
+     */
+    Chunk(long firstDay) {
+      this.firstDay = firstDay;
+    }
+
+    /**
+     * This method builds the trees from the day totals in O(CHUNK_DAYS), every node adds itself to its parent
+     */
+    void rebuild() {
+      Arrays.fill(this.distanceTree, 0);
+      Arrays.fill(this.secondsTree, 0);
+      Arrays.fill(this.countTree, 0);
+      for (int i = 1; i <= CHUNK_DAYS; ++i) {
+        this.distanceTree[i] += this.dayDistance[i - 1];
+        this.secondsTree[i] += this.daySeconds[i - 1];
+        this.countTree[i] += this.dayCount[i - 1];
+        int parent = i + (i & -i);
+        if (parent <= CHUNK_DAYS) {
+          this.distanceTree[parent] += this.distanceTree[i];
+          this.secondsTree[parent] += this.secondsTree[i];
+          this.countTree[parent] += this.countTree[i];
+        }
+      }
+      this.changed = false;
+    }
+  }
+
+  /**
+   * This class holds the total distance, time and amount of runs of a range of dates
+   */
+  public static class Total {
+    double distance = 0;
+    long seconds = 0;
+    int count = 0;
+
+    /**
+     * returns the total distance of the runs
+     * @return the total distance in miles
+     */
+    public double getDistance() {
+      return this.distance;
+    }
+
+    /**
+     * returns the total time of the runs
+     * @return the total time in seconds
+     */
+    public long getSeconds() {
+      return this.seconds;
+    }
+
+    /**
+     * returns the amount of runs
+     * @return the amount of runs
+     */
+    public int getCount() {
+      return this.count;
+    }
+
+    /**
+     * returns the average pace of the runs, which is the total time divided by the total distance
+     * @return the average pace in seconds per mile rounded to the closest second, or 0 if there are no runs
+     */
+    public int getAveragePace() {
+      if (this.count == 0 || this.distance <= 0) {
+        return 0;
+      }
+      return (int) Math.round(this.seconds / this.distance);
+    }
+  }
+}
@@ -0,0 +1,349 @@
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class defines a list of runs stored in segments of at most SEGMENT_SIZE runs, so a frozen copy of the
+ * list (used by snapshots) only copies the table of segments instead of every run. Once a segment is part of a
+ * frozen copy it is never changed again, the list copies a segment the first time it changes after a snapshot
+ * (copy on write), so a snapshot costs O(n / SEGMENT_SIZE) and its memory grows with the amount of changes
+ */
+public class SegmentedRunList extends AbstractList<Run> implements RandomAccess {
+
+  static final int SEGMENT_SIZE = 1024; // a full segment is split into two halves
+  // shared by every list so versions are never reused, a segment or run made before the latest snapshot of its
+  // list (a lower version) can be part of that snapshot
+  static final AtomicLong VERSIONS = new AtomicLong();
+
+  Run[][] segments = new Run[4][];
+  int[] starts = new int[4]; // the index in the list of the first run of each segment
+  int[] sizes = new int[4]; // the amount of runs in each segment
+  long[] versions = new long[4]; // the version each segment was made at
+  int segmentCount = 0;
+  int size = 0;
+  boolean frozen = false; // true for a frozen copy, which can not be changed
+  long snapshotVersion = -1; // the version of the latest frozen copy of this list
+  AtomicInteger openSnapshots = new AtomicInteger(); // frozen copies that have not been released yet
+
+  /**
+   * This method gets the run at the passed in index
+   * @param index the index of the run
+   * @return the run at that index
+   */
+  @Override
+  public Run get(int index) {
+    int segment = this.segmentOf(index);
+    return this.segments[segment][index - this.starts[segment]];
+  }
+
+  /**
+   * This method gets an iterator over the runs in order. The iterator keeps its own place in the segments, so
+   * reading the list in order skips the binary search, and reading never changes the list (many threads can read
+   * it at once while no one changes it)
+   * @return an iterator over the runs
+   */
+  @Override
+  public Iterator<Run> iterator() {
+    return new Iterator<Run>() {
+      int segment = 0; // the segment of the next run
+      int offset = 0; // the index of the next run in its segment
+      int remaining = SegmentedRunList.this.size;
+      int expectedModCount = SegmentedRunList.this.modCount;
+
+      @Override
+      public boolean hasNext() {
+        return this.remaining > 0;
+      }
+
+      @Override
+      public Run next() {
+        SegmentedRunList list = SegmentedRunList.this;
+        if (list.modCount != this.expectedModCount) {
+          throw new ConcurrentModificationException();
+        }
+        if (this.remaining == 0) {
+          throw new NoSuchElementException();
+        }
+        while (this.offset >= list.sizes[this.segment]) {
+          ++this.segment;
+          this.offset = 0;
+        }
+        --this.remaining;
+        return list.segments[this.segment][this.offset++];
+      }
+    };
+  }
+
+  /**
+   * This method gets the amount of runs in the list
+   * @return the size field variable
+   */
+  @Override
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * replaces the run at the passed in index
+   * @param index the index of the run
+   * @param toSet the new run
+   * @return the run that was replaced
+   */
+  @Override
+  public Run set(int index, Run toSet) {
+    int segment = this.segmentOf(index);
+    Run[] runs = this.writable(segment);
+    int offset = index - this.starts[segment];
+    Run old = runs[offset];
+    runs[offset] = toSet;
+    return old;
+  }
+
+  /**
+   * inserts the passed in run at the passed in index, moving the runs after it back by one
+   * @param index the index to insert at
+   * @param toAdd the run to insert
+   */
+  @Override
+  public void add(int index, Run toAdd) {
+    this.checkWritable();
+    if (index < 0 || index > this.size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+    }
+    int segment;
+    if (index == this.size) {
+      // runs are appended to the last segment while it has room
+      segment = this.segmentCount - 1;
+      if (segment == -1 || this.sizes[segment] == SEGMENT_SIZE) {
+        segment = this.insertSegment(this.segmentCount, this.size, new Run[SEGMENT_SIZE]);
+      }
+    }
+    else {
+      segment = this.segmentOf(index);
+      if (this.sizes[segment] == SEGMENT_SIZE) {
+        this.split(segment);
+        segment = this.segmentOf(index);
+      }
+    }
+    Run[] runs = this.writable(segment);
+    int offset = index - this.starts[segment];
+    System.arraycopy(runs, offset, runs, offset + 1, this.sizes[segment] - offset);
+    runs[offset] = toAdd;
+    ++this.sizes[segment];
+    for (int i = segment + 1; i < this.segmentCount; ++i) {
+      ++this.starts[i];
+    }
+    ++this.size;
+    ++this.modCount;
+  }
+
+  /**
+   * adds all the passed in runs to the end of the list, filling up segments one after another
+   * @param toAdd the runs to add
+   * @return true if any runs were added
+   */
+  @Override
+  public boolean addAll(Collection<? extends Run> toAdd) {
+    this.checkWritable();
+    Run[] added = toAdd.toArray(new Run[0]);
+    int copied = 0;
+    while (copied < added.length) {
+      int segment = this.segmentCount - 1;
+      if (segment == -1 || this.sizes[segment] == SEGMENT_SIZE) {
+        segment = this.insertSegment(this.segmentCount, this.size, new Run[SEGMENT_SIZE]);
+      }
+      Run[] runs = this.writable(segment);
+      int amount = Math.min(SEGMENT_SIZE - this.sizes[segment], added.length - copied);
+      System.arraycopy(added, copied, runs, this.sizes[segment], amount);
+      this.sizes[segment] += amount;
+      this.size += amount;
+      copied += amount;
+    }
+    ++this.modCount;
+    return added.length > 0;
+  }
+
+  /**
+   * removes the run at the passed in index, moving the runs after it forward by one
+   * @param index the index of the run
+   * @return the removed run
+   */
+  @Override
+  public Run remove(int index) {
+    this.checkWritable();
+    int segment = this.segmentOf(index);
+    Run[] runs = this.writable(segment);
+    int offset = index - this.starts[segment];
+    Run removed = runs[offset];
+    System.arraycopy(runs, offset + 1, runs, offset, this.sizes[segment] - offset - 1);
+    runs[--this.sizes[segment]] = null;
+    for (int i = segment + 1; i < this.segmentCount; ++i) {
+      --this.starts[i];
+    }
+    --this.size;
+    ++this.modCount;
+    if (this.sizes[segment] == 0) {
+      this.removeSegment(segment);
+    }
+    else if (segment + 1 < this.segmentCount && this.sizes[segment] + this.sizes[segment + 1] <= SEGMENT_SIZE / 2) {
+      this.merge(segment); // keeps segments from getting very small after a lot of removes
+    }
+    return removed;
+  }
+
+  /**
+   * This method makes a frozen copy of this list. The copy shares every segment with this list, and this list
+   * copies a segment before changing it for as long as the copy is not released
+   * @return a copy of this list that can not be changed
+   */
+  SegmentedRunList freeze() {
+    SegmentedRunList copy = new SegmentedRunList();
+    copy.segments = Arrays.copyOf(this.segments, this.segmentCount);
+    copy.starts = Arrays.copyOf(this.starts, this.segmentCount);
+    copy.sizes = Arrays.copyOf(this.sizes, this.segmentCount);
+    copy.segmentCount = this.segmentCount;
+    copy.size = this.size;
+    copy.frozen = true;
+    this.snapshotVersion = VERSIONS.incrementAndGet();
+    this.openSnapshots.incrementAndGet();
+    return copy;
+  }
+
+  /**
+   * This method tells this list that one of its frozen copies is no longer used. Once every copy is released,
+   * segments are changed in place again
+   */
+  void release() {
+    this.openSnapshots.decrementAndGet();
+  }
+
+  /**
+   * This method tells if something made at the passed in version can be part of an open frozen copy of this list,
+   * so it has to be copied before it is changed
+   * @param version the version the segment or run was made at
+   * @return true if it can be in a frozen copy
+   */
+  boolean isShared(long version) {
+    return version < this.snapshotVersion && this.openSnapshots.get() > 0;
+  }
+
+  /**
+   * This method gets the current version, anything made now is not part of any frozen copy yet
+   * @return the latest version
+   */
+  static long currentVersion() {
+    return VERSIONS.get();
+  }
+
+  /**
+   * This private method gets the segment of the passed in index with a binary search over the segment starts. It
+   * only reads the list, so it is safe to call from readers that hold no lock
+   */
+  private int segmentOf(int index) {
+    if (index < 0 || index >= this.size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+    }
+    // the last segment that starts at or before the index
+    int low = 0;
+    int high = this.segmentCount - 1;
+    while (low < high) {
+      int mid = (low + high + 1) >>> 1;
+      if (this.starts[mid] <= index) {
+        low = mid;
+      }
+      else {
+        high = mid - 1;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * This private method gets the runs of the passed in segment so they can be changed, copying them first if
+   * the segment is part of a frozen copy
+   */
+  private Run[] writable(int segment) {
+    this.checkWritable();
+    if (this.isShared(this.versions[segment])) {
+      this.segments[segment] = Arrays.copyOf(this.segments[segment], SEGMENT_SIZE);
+      this.versions[segment] = currentVersion();
+    }
+    return this.segments[segment];
+  }
+
+  /**
+   * This private method splits a full segment into two halves
+   */
+  private void split(int segment) {
+    int half = SEGMENT_SIZE / 2;
+    Run[] second = new Run[SEGMENT_SIZE];
+    System.arraycopy(this.segments[segment], half, second, 0, SEGMENT_SIZE - half);
+    Run[] first = this.writable(segment);
+    Arrays.fill(first, half, SEGMENT_SIZE, null);
+    this.sizes[segment] = half;
+    int added = this.insertSegment(segment + 1, this.starts[segment] + half, second);
+    this.sizes[added] = SEGMENT_SIZE - half;
+  }
+
+  /**
+   * This private method moves the runs of the segment after the passed in one into it and removes that segment
+   */
+  private void merge(int segment) {
+    Run[] runs = this.writable(segment);
+    System.arraycopy(this.segments[segment + 1], 0, runs, this.sizes[segment], this.sizes[segment + 1]);
+    this.sizes[segment] += this.sizes[segment + 1];
+    this.removeSegment(segment + 1);
+  }
+
+  /**
+   * This private method adds an empty segment at the passed in position
+   */
+  private int insertSegment(int segment, int start, Run[] runs) {
+    if (this.segmentCount == this.segments.length) {
+      int capacity = this.segments.length * 2;
+      this.segments = Arrays.copyOf(this.segments, capacity);
+      this.starts = Arrays.copyOf(this.starts, capacity);
+      this.sizes = Arrays.copyOf(this.sizes, capacity);
+      this.versions = Arrays.copyOf(this.versions, capacity);
+    }
+    int after = this.segmentCount - segment;
+    System.arraycopy(this.segments, segment, this.segments, segment + 1, after);
+    System.arraycopy(this.starts, segment, this.starts, segment + 1, after);
+    System.arraycopy(this.sizes, segment, this.sizes, segment + 1, after);
+    System.arraycopy(this.versions, segment, this.versions, segment + 1, after);
+    this.segments[segment] = runs;
+    this.starts[segment] = start;
+    this.sizes[segment] = 0;
+    this.versions[segment] = currentVersion();
+    ++this.segmentCount;
+    return segment;
+  }
+
+  /**
+   * This private method removes the segment at the passed in position, its runs have to be gone already
+   */
+  private void removeSegment(int segment) {
+    int after = this.segmentCount - segment - 1;
+    System.arraycopy(this.segments, segment + 1, this.segments, segment, after);
+    System.arraycopy(this.starts, segment + 1, this.starts, segment, after);
+    System.arraycopy(this.sizes, segment + 1, this.sizes, segment, after);
+    System.arraycopy(this.versions, segment + 1, this.versions, segment, after);
+    --this.segmentCount;
+    this.segments[this.segmentCount] = null;
+  }
+
+  /**
+   * This private method throws if this list is a frozen copy
+   */
+  private void checkWritable() {
+    if (this.frozen) {
+      throw new UnsupportedOperationException("A snapshot can not be changed");
+    }
+  }
+}
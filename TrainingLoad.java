@@ -0,0 +1,237 @@
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * This class keeps the acute (7 day) and chronic (28 day) training load of every day and the ratio between them.
+ * The load of a day is the amount of minutes run that day, read from the day totals of RunTotals, and both loads
+ * are exponentially weighted moving averages of it. A change to the runs of a day only marks that day as changed,
+ * the next time a load is read every day from the earliest changed day on is recomputed, and earlier days are kept.
+ * The loads are only kept for the days of the chunks of RunTotals, over the days between chunks there are no runs
+ * so the loads just decay by their weight every day.
+ *
+ * Reading a load can recompute and write the loads of changed days, so the getters change this object. They must
+ * only be called by the thread that changes the runs, or under an exclusive (write) lock. They can not be called
+ * from an optimistic read or under a shared read lock
+ */
+public class TrainingLoad {
+
+  static final int ACUTE_DAYS = 7;
+  static final int CHRONIC_DAYS = 28;
+  // how much the load of a new day counts towards each average
+  static final double ACUTE_WEIGHT = 2.0 / (ACUTE_DAYS + 1);
+  static final double CHRONIC_WEIGHT = 2.0 / (CHRONIC_DAYS + 1);
+  static final int MAX_DAYS = 366 * 20; // the most days getDays returns at once, 20 years
+
+  RunTotals totals; // the day totals the loads are computed from, the loads are kept in its chunks
+  long changedDay = Long.MAX_VALUE; // the earliest day whose loads are out of date, MAX_VALUE if none are
+
+  /**
+   * Constructor for the training load of the runs in the passed in totals
+   * @param totals the day totals of the runs
+   */
+  TrainingLoad(RunTotals totals) {
+    this.totals = totals;
+  }
+
+  /**
+   * marks the loads from the date of the passed in run on as out of date, after the run was added, removed or
+   * edited
+   * @param changed the run that changed
+   */
+  void changed(Run changed) {
+    this.changedDay = Math.min(this.changedDay, changed.runDate.toEpochDay());
+  }
+
+  /**
+   * marks the loads from the earliest date of the passed in runs on as out of date
+   * @param changed the runs that changed
+   */
+  void changed(List<Run> changed) {
+    for (int i = 0; i < changed.size(); ++i) {
+      this.changed(changed.get(i));
+    }
+  }
+
+  /**
+   * This method gets the acute (7 day) training load at the end of the passed in date
+   * @param date the date
+   * @return the acute load in minutes per day
+   */
+  public double getAcuteLoad(LocalDate date) {
+    return this.load(true, date.toEpochDay());
+  }
+
+  /**
+   * This method gets the chronic (28 day) training load at the end of the passed in date
+   * @param date the date
+   * @return the chronic load in minutes per day
+   */
+  public double getChronicLoad(LocalDate date) {
+    return this.load(false, date.toEpochDay());
+  }
+
+  /**
+   * This method gets the acute:chronic load ratio at the end of the passed in date
+   * @param date the date
+   * @return the acute load divided by the chronic load, or 0 if there is no chronic load
+   */
+  public double getLoadRatio(LocalDate date) {
+    double chronicLoad = this.getChronicLoad(date);
+    return chronicLoad == 0 ? 0 : this.getAcuteLoad(date) / chronicLoad;
+  }
+
+  /**
+   * This method gets the loads of every day from the first date to the second date (inclusive)
+   * @param from the first date
+   * @param to the last date
+   * @return the loads of every day in the range, in date order
+   * @throws IllegalArgumentException if a date is null, the range is backwards or longer than MAX_DAYS days
+   */
+  public Day[] getDays(LocalDate from, LocalDate to) {
+    if (from == null || to == null || to.isBefore(from)) {
+      throw new IllegalArgumentException("Invalid date range");
+    }
+    long start = from.toEpochDay();
+    long length = to.toEpochDay() - start + 1;
+    if (length > MAX_DAYS) {
+      throw new IllegalArgumentException("Date range can not be longer than " + MAX_DAYS + " days");
+    }
+    Day[] days = new Day[(int) length];
+    for (int i = 0; i < days.length; ++i) {
+      Day day = new Day();
+      day.date = LocalDate.ofEpochDay(start + i);
+      day.acute = this.load(true, start + i);
+      day.chronic = this.load(false, start + i);
+      days[i] = day;
+    }
+    return days;
+  }
+
+  /**
+   * This private method gets the acute or chronic load of the passed in epoch day. Before the first chunk there are
+   * no runs so the load is 0, after the end of a chunk the load decays by the weight every day
+   */
+  private double load(boolean acute, long day) {
+    this.ensureCurrent();
+    int index = this.totals.chunkAtOrBefore(day);
+    if (index == -1) {
+      return 0;
+    }
+    RunTotals.Chunk chunk = this.totals.chunks[index];
+    double[] loads = acute ? chunk.acute : chunk.chronic;
+    long offset = day - chunk.firstDay;
+    if (offset < RunTotals.CHUNK_DAYS) {
+      return loads[(int) offset];
+    }
+    return decay(loads[RunTotals.CHUNK_DAYS - 1], acute ? ACUTE_WEIGHT : CHRONIC_WEIGHT,
+        offset - RunTotals.CHUNK_DAYS + 1);
+  }
+
+  /**
+   * This private method recomputes the loads of every day from the earliest changed day on, chunk by chunk
+   */
+  private void ensureCurrent() {
+    if (this.changedDay == Long.MAX_VALUE) {
+      return;
+    }
+    RunTotals.Chunk[] chunks = this.totals.chunks;
+    int index = Math.max(0, this.totals.chunkAtOrBefore(this.changedDay));
+    int start = 0;
+    if (index < this.totals.chunkCount && chunks[index].acute != null) {
+      start = (int) Math.max(0, this.changedDay - chunks[index].firstDay);
+      if (start >= RunTotals.CHUNK_DAYS) {
+        // the changed day is after the chunk, so it starts at the next chunk
+        ++index;
+        start = 0;
+      }
+    }
+
+    // the loads at the end of the day before the first day that is recomputed
+    double acuteLoad = 0;
+    double chronicLoad = 0;
+    long lastDay = 0; // the epoch day those loads are at, only read if there is a chunk before
+    if (start > 0) {
+      acuteLoad = chunks[index].acute[start - 1];
+      chronicLoad = chunks[index].chronic[start - 1];
+      lastDay = chunks[index].firstDay + start - 1;
+    }
+    else if (index > 0) {
+      acuteLoad = chunks[index - 1].acute[RunTotals.CHUNK_DAYS - 1];
+      chronicLoad = chunks[index - 1].chronic[RunTotals.CHUNK_DAYS - 1];
+      lastDay = chunks[index - 1].firstDay + RunTotals.CHUNK_DAYS - 1;
+    }
+    for (; index < this.totals.chunkCount; ++index) {
+      RunTotals.Chunk chunk = chunks[index];
+      if (chunk.acute == null) {
+        chunk.acute = new double[RunTotals.CHUNK_DAYS];
+        chunk.chronic = new double[RunTotals.CHUNK_DAYS];
+        start = 0;
+      }
+      if (start == 0 && index > 0) {
+        // no runs on the days between the chunks
+        long gap = chunk.firstDay - lastDay - 1;
+        acuteLoad = decay(acuteLoad, ACUTE_WEIGHT, gap);
+        chronicLoad = decay(chronicLoad, CHRONIC_WEIGHT, gap);
+      }
+      long[] daySeconds = chunk.daySeconds;
+      for (int i = start; i < RunTotals.CHUNK_DAYS; ++i) {
+        double minutes = daySeconds[i] / 60.0;
+        acuteLoad += ACUTE_WEIGHT * (minutes - acuteLoad);
+        chronicLoad += CHRONIC_WEIGHT * (minutes - chronicLoad);
+        chunk.acute[i] = acuteLoad;
+        chunk.chronic[i] = chronicLoad;
+      }
+      lastDay = chunk.firstDay + RunTotals.CHUNK_DAYS - 1;
+      start = 0;
+    }
+    this.changedDay = Long.MAX_VALUE;
+  }
+
+  /**
+   * This private method gets a load after the passed in amount of days without runs
+   */
+  private static double decay(double load, double weight, long days) {
+    return days == 0 ? load : load * Math.pow(1 - weight, days);
+  }
+
+  /**
+   * This class holds the training loads of one day
+   */
+  public static class Day {
+    LocalDate date;
+    double acute;
+    double chronic;
+
+    /**
+     * returns the date of these loads
+     * @return the date
+     */
+    public LocalDate getDate() {
+      return this.date;
+    }
+
+    /**
+     * returns the acute (7 day) load
+     * @return the acute load in minutes per day
+     */
+    public double getAcute() {
+      return this.acute;
+    }
+
+    /**
+     * returns the chronic (28 day) load
+     * @return the chronic load in minutes per day
+     */
+    public double getChronic() {
+      return this.chronic;
+    }
+
+    /**
+     * returns the acute:chronic load ratio
+     * @return the acute load divided by the chronic load, or 0 if there is no chronic load
+     */
+    public double getRatio() {
+      return this.chronic == 0 ? 0 : this.acute / this.chronic;
+    }
+  }
+}
@@ -0,0 +1,37 @@
+import java.io.IOException;
+import runlog.jmh.Operation;
+
+/**
+ * This class makes the operations of RunMicroBenchmark for the JMH benchmarks, which can not name the classes of
+ * the Running Log themselves. The benchmarks only see the operation, the log it works on stays in its lambda
+ */
+public class RunOperations {
+
+  /**
+   * This method makes the log of the passed in size and distribution and gets the operation of a log benchmark
+   * @param name the name of a benchmark in RunMicroBenchmark.LOG_BENCHMARKS
+   * @param size the amount of runs in the log
+   * @param distribution how the dates of the runs are spread out, like many-per-day
+   * @return the operation of the benchmark
+   * @throws IOException if the CSV file of the log could not be written
+   */
+  public static Operation ofLog(String name, int size, String distribution) throws IOException {
+    RunMicroBenchmark.Log log = new RunMicroBenchmark.Log(size, RunMicroBenchmark.Distribution.of(distribution));
+    RunMicroBenchmark.Operation operation = log.operation(name);
+    // the CSV file of readFile is only deleted when the JVM exits, since JMH keeps the operation until then
+    if (log.csv != null) {
+      log.csv.deleteOnExit();
+    }
+    return operation::run;
+  }
+
+  /**
+   * This method gets the operation of a benchmark that does not work on a log
+   * @param name the name of a benchmark in RunMicroBenchmark.RUN_BENCHMARKS
+   * @return the operation of the benchmark
+   */
+  public static Operation ofRun(String name) {
+    RunMicroBenchmark.Operation operation = RunMicroBenchmark.runOperation(name);
+    return operation::run;
+  }
+}
@@ -0,0 +1,58 @@
+package runlog.jmh;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This class measures the operations of RunStorage on logs of every size and date distribution. Every combination
+ * runs in its own fork, so the JIT only ever sees one operation. Run it with the GC profiler to get the bytes each
+ * operation allocates:
+ * java -jar benchmarks/target/benchmarks.jar LogBenchmark -prof gc
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class LogBenchmark {
+
+  @Param({"addRun", "readFile", "getRun", "findRun", "getLatest7"})
+  String operation;
+
+  @Param({"1000", "100000", "1000000"})
+  int size;
+
+  @Param({"sorted", "reversed", "random", "many-per-day"})
+  String distribution;
+
+  Operation toRun;
+  int i = 0; // picks the input of the next call
+
+  /**
+   * makes the log and the inputs of the operation
+   */
+  @Setup(Level.Trial)
+  public void makeLog() throws Exception {
+    this.toRun = Operation.ofLog(this.operation, this.size, this.distribution);
+  }
+
+  /**
+   * runs the operation once
+   */
+  @Benchmark
+  public Object run() throws Exception {
+    return this.toRun.run(this.i++);
+  }
+}
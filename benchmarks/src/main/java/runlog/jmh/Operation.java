@@ -0,0 +1,47 @@
+package runlog.jmh;
+
+/**
+ * This interface defines one operation that a benchmark times. The classes of the Running Log are in the default
+ * package, which JMH benchmarks can not be in and other packages can not import, so RunOperations (in the default
+ * package) makes the operations and hands them over through this interface
+ */
+public interface Operation {
+
+  /**
+   * This method runs the operation once
+   * @param i a counter that picks the input of the operation
+   * @return the result of the operation, so it can not be skipped by the JIT
+   * @throws Exception if the operation fails
+   */
+  Object run(int i) throws Exception;
+
+  /**
+   * This method makes the operation of a benchmark that works on a log, like RunMicroBenchmark does
+   * @param name the name of a benchmark in RunMicroBenchmark.LOG_BENCHMARKS
+   * @param size the amount of runs in the log
+   * @param distribution how the dates of the runs are spread out, like many-per-day
+   * @return the operation of the benchmark
+   * @throws Exception if the log could not be made
+   */
+  static Operation ofLog(String name, int size, String distribution) throws Exception {
+    return (Operation) operations().getMethod("ofLog", String.class, int.class, String.class)
+        .invoke(null, name, size, distribution);
+  }
+
+  /**
+   * This method makes the operation of a benchmark that does not work on a log
+   * @param name the name of a benchmark in RunMicroBenchmark.RUN_BENCHMARKS
+   * @return the operation of the benchmark
+   * @throws Exception if the operation could not be made
+   */
+  static Operation ofRun(String name) throws Exception {
+    return (Operation) operations().getMethod("ofRun", String.class).invoke(null, name);
+  }
+
+  /**
+   * This private method finds RunOperations, which can only be named at run time
+   */
+  private static Class<?> operations() throws ClassNotFoundException {
+    return Class.forName("RunOperations");
+  }
+}
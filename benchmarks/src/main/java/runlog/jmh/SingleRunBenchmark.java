@@ -0,0 +1,51 @@
+package runlog.jmh;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This class measures making, parsing and comparing single runs, which does not depend on a log. Run it with the
+ * GC profiler to get the bytes each operation allocates:
+ * java -jar benchmarks/target/benchmarks.jar SingleRunBenchmark -prof gc
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SingleRunBenchmark {
+
+  @Param({"comparePace", "newRunWithDate", "newRun", "newRunParsed", "newRunOf", "parseSeconds"})
+  String operation;
+
+  Operation toRun;
+  int i = 0; // picks the input of the next call
+
+  /**
+   * makes the inputs of the operation
+   */
+  @Setup(Level.Trial)
+  public void makeInputs() throws Exception {
+    this.toRun = Operation.ofRun(this.operation);
+  }
+
+  /**
+   * runs the operation once
+   */
+  @Benchmark
+  public Object run() throws Exception {
+    return this.toRun.run(this.i++);
+  }
+}